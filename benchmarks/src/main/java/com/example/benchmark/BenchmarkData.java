@@ -0,0 +1,114 @@
+package com.example.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.NcDataModel;
+import com.example.NcReader;
+import org.slf4j.LoggerFactory;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基准测试的输入数据
+ * 合成的 nc 文件按格点大小生成一次 缓存在 bench.data.dir(默认 target/bench-data) 下 后续 fork 直接复用
+ */
+public final class BenchmarkData {
+
+    public static final String DATA_DIR_PROPERTY = "bench.data.dir";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 解析格点参数 例如 721x1440
+     *
+     * @return {纬度格点数, 经度格点数}
+     */
+    public static int[] parseGrid(String grid) {
+        String[] parts = grid.toLowerCase().split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("格点参数格式为 纬度数x经度数: " + grid);
+        }
+        return new int[]{Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())};
+    }
+
+    public static File dataDir() throws IOException {
+        File dir = new File(System.getProperty(DATA_DIR_PROPERTY, "target/bench-data"));
+        Files.createDirectories(dir.toPath());
+        return dir;
+    }
+
+    /**
+     * ERA5 单层格式的合成文件(t2m u10 v10 一个时次) 不存在时生成
+     */
+    public static synchronized File era5SingleLevel(String grid) throws IOException {
+        int[] size = parseGrid(grid);
+        File file = new File(dataDir(), "ERA5_single_" + size[0] + "x" + size[1] + ".nc");
+        if (!file.exists()) {
+            SyntheticNetcdf.writeEra5SingleLevel(file, size[0], size[1], 1);
+        }
+        return file;
+    }
+
+    /**
+     * 读取要素第一个时次 与 NcToPngUtils 出图时的读取方式相同
+     */
+    public static NcDataModel readFirstSlice(File file, String variableName) throws IOException {
+        try (NetcdfFile netcdfFile = NetcdfFile.open(file.getPath())) {
+            Variable variable = netcdfFile.findVariable(variableName);
+            if (variable == null) {
+                throw new IOException("文件中没有要素:" + variableName + " " + file);
+            }
+            int[] shape = variable.getShape();
+            int[] origin = new int[shape.length];
+            shape[0] = 1;
+            NcDataModel model = NcReader.readNcDataTrue(variable, origin, shape);
+            if (model == null) {
+                throw new IOException("读取要素失败:" + variableName + " " + file);
+            }
+            return model;
+        }
+    }
+
+    /**
+     * 基准测试的输出目录
+     */
+    public static File outputDir(String name) throws IOException {
+        File dir = new File(dataDir(), "out-" + name);
+        Files.createDirectories(dir.toPath());
+        return dir;
+    }
+
+    /**
+     * 解析命令行参数 --key value 后面没有值的为开关 取值 true
+     */
+    public static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("无法识别的参数:" + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "true");
+            }
+        }
+        return options;
+    }
+
+    /**
+     * 每个切片都会输出 INFO 日志 基准测试时只保留 WARN 及以上
+     */
+    public static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger("com.example")).setLevel(Level.WARN);
+        ((Logger) LoggerFactory.getLogger("com.geovis")).setLevel(Level.WARN);
+    }
+}
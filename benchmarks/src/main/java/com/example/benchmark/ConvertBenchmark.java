@@ -0,0 +1,63 @@
+package com.example.benchmark;
+
+import com.example.NcDataModel;
+import com.example.NumberUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取后的数据转换 打包的 short 解包、屏蔽无效值并转为 double
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ConvertBenchmark {
+
+    @Param({"721x1440", "2001x4001"})
+    public String grid;
+
+    private NcDataModel model;
+    private Array array;
+    private Object javaArray;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkData.quietLogging();
+        File file = BenchmarkData.era5SingleLevel(grid);
+        model = BenchmarkData.readFirstSlice(file, "t2m");
+        array = model.getDataArray();
+        javaArray = array.reduce().copyToNDJavaArray();
+    }
+
+    @Benchmark
+    public double[][] convertDouble2Array() {
+        return model.convertDouble2Array(array);
+    }
+
+    @Benchmark
+    public double[] convertDoubleVector() {
+        return model.convertDoubleVector(array);
+    }
+
+    @Benchmark
+    public double[][] transformToDoubleTwoRank() {
+        return NumberUtils.transformToDoubleTwoRank(javaArray);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合成 nc 文件语料 每种格式一个子目录 与输入目录的结构相同(输入目录/文件夹/文件)
+ * 文件名与 filename-rules.conf 中的规则对应 相邻文件间隔6小时
+ * <p>
+ * java -cp target/benchmarks.jar com.example.benchmark.CorpusGenerator --out target/corpus --files 8 --grid 721x1440
+ */
+public class CorpusGenerator {
+
+    public static final List<String> LAYOUTS = Arrays.asList("era5", "era5-pl", "gfs", "wrf");
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter HOUR = DateTimeFormatter.ofPattern("HH");
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private int files = 4;
+    private String grid = "721x1440";
+    private String wrfGrid = "400x500";
+    private int times = 1;
+    private int levels = 4;
+    private List<String> layouts = LAYOUTS;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = BenchmarkData.parseOptions(args);
+        File out = new File(options.getOrDefault("out", "target/corpus"));
+        List<File> generated = fromOptions(options).generate(out);
+        System.out.println("生成 " + generated.size() + " 个文件: " + out.getAbsolutePath());
+    }
+
+    /**
+     * 从命令行参数创建 --files --grid --wrf-grid --times --levels --layouts
+     */
+    public static CorpusGenerator fromOptions(Map<String, String> options) {
+        CorpusGenerator generator = new CorpusGenerator();
+        if (options.containsKey("files")) {
+            generator.setFiles(Integer.parseInt(options.get("files")));
+        }
+        if (options.containsKey("grid")) {
+            generator.setGrid(options.get("grid"));
+        }
+        if (options.containsKey("wrf-grid")) {
+            generator.setWrfGrid(options.get("wrf-grid"));
+        }
+        if (options.containsKey("times")) {
+            generator.setTimes(Integer.parseInt(options.get("times")));
+        }
+        if (options.containsKey("levels")) {
+            generator.setLevels(Integer.parseInt(options.get("levels")));
+        }
+        if (options.containsKey("layouts")) {
+            generator.setLayouts(Arrays.asList(options.get("layouts").split(",")));
+        }
+        return generator;
+    }
+
+    /**
+     * 生成语料 已存在的文件不重新生成
+     *
+     * @param dir 语料根目录
+     * @return 所有文件
+     */
+    public List<File> generate(File dir) throws IOException {
+        int[] size = BenchmarkData.parseGrid(grid);
+        int[] wrfSize = BenchmarkData.parseGrid(wrfGrid);
+        List<File> generated = new ArrayList<>();
+        for (String layout : layouts) {
+            String name = layout.trim();
+            if (!LAYOUTS.contains(name)) {
+                throw new IllegalArgumentException("未知格式:" + name + " 可选:" + LAYOUTS);
+            }
+            File folder = new File(dir, name);
+            Files.createDirectories(folder.toPath());
+            for (int i = 0; i < files; i++) {
+                int firstHour = i * 6;
+                File file = new File(folder, fileName(name, START.plusHours(firstHour)));
+                if (!file.exists()) {
+                    long start = System.nanoTime();
+                    write(name, file, size, wrfSize, firstHour);
+                    System.out.println(file.getPath() + " " + (System.nanoTime() - start) / 1000000 + "ms");
+                }
+                generated.add(file);
+            }
+        }
+        return generated;
+    }
+
+    private void write(String layout, File file, int[] size, int[] wrfSize, int firstHour) throws IOException {
+        switch (layout) {
+            case "era5":
+                SyntheticNetcdf.writeEra5SingleLevel(file, size[0], size[1], times, firstHour);
+                break;
+            case "era5-pl":
+                SyntheticNetcdf.writeEra5PressureLevel(file, size[0], size[1], times, levels, firstHour);
+                break;
+            case "gfs":
+                SyntheticNetcdf.writeGfs(file, size[0], size[1], levels, firstHour);
+                break;
+            default:
+                SyntheticNetcdf.writeWrf(file, wrfSize[0], wrfSize[1], times, firstHour);
+                break;
+        }
+    }
+
+    static String fileName(String layout, LocalDateTime time) {
+        String date = time.format(DATE);
+        String hour = time.format(HOUR);
+        switch (layout) {
+            case "era5":
+                return "ERA5_sl_" + date + "_" + hour + ".nc";
+            case "era5-pl":
+                return "ERA5_pl_" + date + "_" + hour + ".nc";
+            case "gfs":
+                return "gfs_global_" + date + hour + ".nc";
+            default:
+                return "wrfout_d01_" + time.toLocalDate() + "_" + hour + "_00_00.nc";
+        }
+    }
+
+    public CorpusGenerator setFiles(int files) {
+        this.files = files;
+        return this;
+    }
+
+    public CorpusGenerator setGrid(String grid) {
+        this.grid = grid;
+        return this;
+    }
+
+    public CorpusGenerator setWrfGrid(String wrfGrid) {
+        this.wrfGrid = wrfGrid;
+        return this;
+    }
+
+    public CorpusGenerator setTimes(int times) {
+        this.times = times;
+        return this;
+    }
+
+    public CorpusGenerator setLevels(int levels) {
+        this.levels = levels;
+        return this;
+    }
+
+    public CorpusGenerator setLayouts(List<String> layouts) {
+        this.layouts = layouts;
+        return this;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.benchmark;
+
+import com.example.FileNameMetadata;
+import com.example.FileNameMetadataParser;
+import com.example.FileNameRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件名解析 要素名、日期、时次、层次
+ * cached 为重复的文件名(命中缓存) uncached 的文件名个数超过缓存上限 每次都完整解析
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FileNameParserBenchmark {
+
+    private static final String[] TEMPLATES = {
+            "ERA5_t2m_%s.nc",
+            "ERA5_t_850_%s_%s.nc",
+            "gfs_u10_%s%s.nc",
+            "gfs_%s%s_tp.nc",
+            "ecmwf_gh_500_%s_%s.nc",
+            "wrfout_d01_%s_%s:00:00",
+            "sst_%s.nc",
+            "rh-925hPa-%s-%sz.nc",
+            "202401_precip_%s.nc"
+    };
+
+    /**
+     * none 只用默认解析 default 加载 bench.rules.file(默认 ../filename-rules.conf)
+     */
+    @Param({"none", "default"})
+    public String rules;
+
+    private String[] cachedNames;
+    private String[] uncachedNames;
+    private int cachedIndex;
+    private int uncachedIndex;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkData.quietLogging();
+        if ("default".equals(rules)) {
+            FileNameMetadataParser.setRules(FileNameRules.load(System.getProperty("bench.rules.file", "../filename-rules.conf")));
+        } else {
+            FileNameMetadataParser.setRules(FileNameRules.EMPTY);
+        }
+        cachedNames = names(256);
+        uncachedNames = names(FileNameMetadataParser.MAX_ENTRIES * 4);
+    }
+
+    @Benchmark
+    public FileNameMetadata parseCached() {
+        String name = cachedNames[cachedIndex];
+        cachedIndex = (cachedIndex + 1) % cachedNames.length;
+        return FileNameMetadataParser.parse(name);
+    }
+
+    @Benchmark
+    public FileNameMetadata parseUncached() {
+        String name = uncachedNames[uncachedIndex];
+        uncachedIndex = (uncachedIndex + 1) % uncachedNames.length;
+        return FileNameMetadataParser.parse(name);
+    }
+
+    @Benchmark
+    public String findDateInPath() {
+        String name = uncachedNames[uncachedIndex];
+        uncachedIndex = (uncachedIndex + 1) % uncachedNames.length;
+        return FileNameMetadataParser.findDateInPath("/data/input/" + name);
+    }
+
+    /**
+     * 按模板生成不重复的文件名 日期从 2020-01-01 起逐日 时次 00/06/12/18
+     */
+    private static String[] names(int count) {
+        String[] names = new String[count];
+        java.time.LocalDate start = java.time.LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < count; i++) {
+            String template = TEMPLATES[i % TEMPLATES.length];
+            java.time.LocalDate date = start.plusDays(i / TEMPLATES.length);
+            String hour = String.format("%02d", (i % 4) * 6);
+            String dateText = template.startsWith("wrfout") || template.startsWith("rh-")
+                    ? date.toString()
+                    : date.format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE);
+            names[i] = String.format(template, dateText, hour);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.benchmark;
+
+import com.example.NcDataModel;
+import com.example.NumberUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线性插值 把整个场逐行从原分辨率插值到加密后的经度
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class InterpolationBenchmark {
+
+    @Param({"721x1440", "2001x4001"})
+    public String grid;
+
+    /**
+     * 加密倍数 新间隔为原间隔除以该值
+     */
+    @Param({"2.5"})
+    public double refine;
+
+    private double[][] rows;
+    private double[] oldInterval;
+    private double[] newInterval;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkData.quietLogging();
+        File file = BenchmarkData.era5SingleLevel(grid);
+        NcDataModel model = BenchmarkData.readFirstSlice(file, "t2m");
+        rows = model.convertDouble2Array(model.getDataArray());
+        int width = rows[0].length;
+        double step = 360.0 / width;
+        oldInterval = new double[width];
+        for (int j = 0; j < width; j++) {
+            oldInterval[j] = j * step;
+        }
+        newInterval = NumberUtils.linearResolvingResize(oldInterval, step / refine);
+    }
+
+    @Benchmark
+    public void linearInterpolation(Blackhole blackhole) {
+        for (double[] row : rows) {
+            blackhole.consume(NumberUtils.linearInterpolation(oldInterval, newInterval, row));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.benchmark;
+
+import com.example.NcDataModel;
+import com.geovis.tools.png.PngUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PNG 编码 包括色标换算、像素写入和 ImageIO 压缩写盘
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class PngRenderBenchmark {
+
+    @Param({"721x1440", "2001x4001"})
+    public String grid;
+
+    private int width;
+    private int height;
+    private double[][] data;
+    private double[] uData;
+    private double[] vData;
+    private String scalarPath;
+    private String windPath;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkData.quietLogging();
+        File file = BenchmarkData.era5SingleLevel(grid);
+        NcDataModel t2m = BenchmarkData.readFirstSlice(file, "t2m");
+        data = t2m.convertDouble2Array(t2m.getDataArray());
+        height = data.length;
+        width = data[0].length;
+        uData = flatten(readField(file, "u10"));
+        vData = flatten(readField(file, "v10"));
+        File out = BenchmarkData.outputDir("png-" + grid);
+        scalarPath = new File(out, "t2m.png").getPath();
+        windPath = new File(out, "uv10.png").getPath();
+    }
+
+    @Benchmark
+    public void writeDataToPngFromLeftBottom() {
+        PngUtils.writeDataToPngFromLeftBottom(scalarPath, data, width, height);
+    }
+
+    @Benchmark
+    public void writeUVDataToPngFromLeftBottom() {
+        PngUtils.writeUVDataToPngFromLeftBottom(windPath, uData, vData, width, height);
+    }
+
+    private static double[][] readField(File file, String variableName) throws Exception {
+        NcDataModel model = BenchmarkData.readFirstSlice(file, variableName);
+        return model.convertDouble2Array(model.getDataArray());
+    }
+
+    /**
+     * 按行展开 第一行为北边
+     */
+    private static double[] flatten(double[][] rows) {
+        int width = rows[0].length;
+        double[] flat = new double[rows.length * width];
+        for (int i = 0; i < rows.length; i++) {
+            System.arraycopy(rows[i], 0, flat, i * width, width);
+        }
+        return flat;
+    }
+}
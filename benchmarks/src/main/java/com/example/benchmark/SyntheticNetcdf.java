@@ -0,0 +1,435 @@
+package com.example.benchmark;
+
+import ucar.ma2.Array;
+import ucar.ma2.ArrayInt;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 生成基准测试用的 NetCDF 文件
+ * 数据为平滑的解析场 每个时次有一小块缺测
+ * 维度名和要素名与实际数据一致 保证 NcDataModel.checkReversal 能识别经纬度:
+ * ERA5 单层/气压层 time/level/latitude/longitude 打包为 short(scale_factor/add_offset)
+ * GFS(ncl_convert2nc 转换) lv_ISBL0/lat_0/lon_0 float 无时间维度
+ * WRF Time/south_north/west_east float 经纬度为二维的 XLAT/XLONG
+ */
+public final class SyntheticNetcdf {
+
+    /**
+     * 打包后的缺测值
+     */
+    static final short FILL_VALUE = -32767;
+
+    /**
+     * GFS 缺测值
+     */
+    static final float GFS_FILL_VALUE = 1e20f;
+
+    /**
+     * 时间基准 hours since 1900-01-01 中 2024-01-01 00:00 的值
+     */
+    static final int HOURS_2024 = 1086960;
+
+    /**
+     * ERA5 气压层 hPa
+     */
+    static final int[] ERA5_LEVELS = {1000, 925, 850, 700, 500, 300, 200, 100};
+
+    private SyntheticNetcdf() {
+    }
+
+    /**
+     * ERA5 单层格式 维度 time/latitude/longitude 要素 t2m u10 v10
+     * 纬度从北到南 经度从0开始
+     *
+     * @param file      输出文件
+     * @param height    纬度格点数
+     * @param width     经度格点数
+     * @param times     时次数
+     * @param firstHour 第一个时次 相对 2024-01-01 00:00 的小时数
+     */
+    public static void writeEra5SingleLevel(File file, int height, int width, int times, int firstHour) throws IOException {
+        Field[] fields = {Field.T2M, Field.U10, Field.V10};
+        float[] lat = latitudes(height);
+        float[] lon = longitudes(width);
+        File tmp = tmpFile(file);
+        NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, tmp.getPath());
+        try {
+            writer.setLargeFile(true);
+            writer.setFill(false);
+            writer.addDimension(null, "time", times);
+            writer.addDimension(null, "latitude", height);
+            writer.addDimension(null, "longitude", width);
+            Variable time = addCoordinate(writer, "time", DataType.INT, "hours since 1900-01-01 00:00:00.0", "time");
+            Variable latitude = addCoordinate(writer, "latitude", DataType.FLOAT, "degrees_north", "latitude");
+            Variable longitude = addCoordinate(writer, "longitude", DataType.FLOAT, "degrees_east", "longitude");
+            Variable[] variables = new Variable[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                variables[i] = addPacked(writer, fields[i], "time latitude longitude");
+            }
+            writer.addGroupAttribute(null, new Attribute("Conventions", "CF-1.6"));
+            writer.create();
+
+            writer.write(time, hours(times, firstHour));
+            writer.write(latitude, Array.factory(DataType.FLOAT, new int[]{height}, lat));
+            writer.write(longitude, Array.factory(DataType.FLOAT, new int[]{width}, lon));
+            for (int t = 0; t < times; t++) {
+                for (int i = 0; i < fields.length; i++) {
+                    short[] data = pack(fields[i], values(fields[i], firstHour + t, 0, lat, lon));
+                    writer.write(variables[i], new int[]{t, 0, 0}, Array.factory(DataType.SHORT, new int[]{1, height, width}, data));
+                }
+            }
+        } catch (InvalidRangeException e) {
+            throw new IOException(e);
+        } finally {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void writeEra5SingleLevel(File file, int height, int width, int times) throws IOException {
+        writeEra5SingleLevel(file, height, width, times, 0);
+    }
+
+    /**
+     * ERA5 气压层格式 维度 time/level/latitude/longitude 要素 t u v
+     *
+     * @param levels 层次数 取 ERA5_LEVELS 的前几个
+     */
+    public static void writeEra5PressureLevel(File file, int height, int width, int times, int levels, int firstHour) throws IOException {
+        Field[] fields = {Field.T, Field.U, Field.V};
+        int levelCount = Math.max(1, Math.min(levels, ERA5_LEVELS.length));
+        float[] lat = latitudes(height);
+        float[] lon = longitudes(width);
+        File tmp = tmpFile(file);
+        NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, tmp.getPath());
+        try {
+            writer.setLargeFile(true);
+            writer.setFill(false);
+            writer.addDimension(null, "time", times);
+            writer.addDimension(null, "level", levelCount);
+            writer.addDimension(null, "latitude", height);
+            writer.addDimension(null, "longitude", width);
+            Variable time = addCoordinate(writer, "time", DataType.INT, "hours since 1900-01-01 00:00:00.0", "time");
+            Variable level = addCoordinate(writer, "level", DataType.INT, "millibars", "air_pressure");
+            Variable latitude = addCoordinate(writer, "latitude", DataType.FLOAT, "degrees_north", "latitude");
+            Variable longitude = addCoordinate(writer, "longitude", DataType.FLOAT, "degrees_east", "longitude");
+            Variable[] variables = new Variable[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                variables[i] = addPacked(writer, fields[i], "time level latitude longitude");
+            }
+            writer.addGroupAttribute(null, new Attribute("Conventions", "CF-1.6"));
+            writer.create();
+
+            writer.write(time, hours(times, firstHour));
+            ArrayInt.D1 levelValues = new ArrayInt.D1(levelCount);
+            for (int k = 0; k < levelCount; k++) {
+                levelValues.set(k, ERA5_LEVELS[k]);
+            }
+            writer.write(level, levelValues);
+            writer.write(latitude, Array.factory(DataType.FLOAT, new int[]{height}, lat));
+            writer.write(longitude, Array.factory(DataType.FLOAT, new int[]{width}, lon));
+            for (int t = 0; t < times; t++) {
+                for (int k = 0; k < levelCount; k++) {
+                    for (int i = 0; i < fields.length; i++) {
+                        short[] data = pack(fields[i], values(fields[i], firstHour + t, k, lat, lon));
+                        writer.write(variables[i], new int[]{t, k, 0, 0}, Array.factory(DataType.SHORT, new int[]{1, 1, height, width}, data));
+                    }
+                }
+            }
+        } catch (InvalidRangeException e) {
+            throw new IOException(e);
+        } finally {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * GFS 格式(ncl_convert2nc 转换 grib2) 一个预报时次一个文件 没有时间维度
+     * 地面要素 TMP/UGRD/VGRD_P0_L103_GLL0(lat_0, lon_0) 等压面温度 TMP_P0_L100_GLL0(lv_ISBL0, lat_0, lon_0)
+     */
+    public static void writeGfs(File file, int height, int width, int levels, int hour) throws IOException {
+        int levelCount = Math.max(1, Math.min(levels, ERA5_LEVELS.length));
+        float[] lat = latitudes(height);
+        float[] lon = longitudes(width);
+        File tmp = tmpFile(file);
+        NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, tmp.getPath());
+        try {
+            writer.setLargeFile(true);
+            writer.setFill(false);
+            writer.addDimension(null, "lv_ISBL0", levelCount);
+            writer.addDimension(null, "lat_0", height);
+            writer.addDimension(null, "lon_0", width);
+            Variable level = addCoordinate(writer, "lv_ISBL0", DataType.FLOAT, "Pa", "Isobaric surface");
+            Variable latitude = addCoordinate(writer, "lat_0", DataType.FLOAT, "degrees_north", "latitude");
+            Variable longitude = addCoordinate(writer, "lon_0", DataType.FLOAT, "degrees_east", "longitude");
+            Variable t2 = addFloat(writer, "TMP_P0_L103_GLL0", Field.T2M, "lat_0 lon_0", GFS_FILL_VALUE);
+            Variable u10 = addFloat(writer, "UGRD_P0_L103_GLL0", Field.U10, "lat_0 lon_0", GFS_FILL_VALUE);
+            Variable v10 = addFloat(writer, "VGRD_P0_L103_GLL0", Field.V10, "lat_0 lon_0", GFS_FILL_VALUE);
+            Variable t = addFloat(writer, "TMP_P0_L100_GLL0", Field.T, "lv_ISBL0 lat_0 lon_0", GFS_FILL_VALUE);
+            writer.create();
+
+            float[] pascals = new float[levelCount];
+            for (int k = 0; k < levelCount; k++) {
+                pascals[k] = ERA5_LEVELS[k] * 100f;
+            }
+            writer.write(level, Array.factory(DataType.FLOAT, new int[]{levelCount}, pascals));
+            writer.write(latitude, Array.factory(DataType.FLOAT, new int[]{height}, lat));
+            writer.write(longitude, Array.factory(DataType.FLOAT, new int[]{width}, lon));
+            int[] shape2d = {height, width};
+            writer.write(t2, Array.factory(DataType.FLOAT, shape2d, toFloat(values(Field.T2M, hour, 0, lat, lon), GFS_FILL_VALUE)));
+            writer.write(u10, Array.factory(DataType.FLOAT, shape2d, toFloat(values(Field.U10, hour, 0, lat, lon), GFS_FILL_VALUE)));
+            writer.write(v10, Array.factory(DataType.FLOAT, shape2d, toFloat(values(Field.V10, hour, 0, lat, lon), GFS_FILL_VALUE)));
+            for (int k = 0; k < levelCount; k++) {
+                float[] data = toFloat(values(Field.T, hour, k, lat, lon), GFS_FILL_VALUE);
+                writer.write(t, new int[]{k, 0, 0}, Array.factory(DataType.FLOAT, new int[]{1, height, width}, data));
+            }
+        } catch (InvalidRangeException e) {
+            throw new IOException(e);
+        } finally {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * WRF 输出格式 维度 Time/south_north/west_east 要素 T2 U10 V10 经纬度为 XLAT/XLONG(Time, south_north, west_east)
+     * 区域为中国附近 纬度从南到北
+     * 原始 wrfout 的时间为字符要素 Times 这里另外写一个 Time 坐标要素 切片时需要按维度名读取取值
+     */
+    public static void writeWrf(File file, int height, int width, int times, int firstHour) throws IOException {
+        Field[] fields = {Field.T2M, Field.U10, Field.V10};
+        String[] names = {"T2", "U10", "V10"};
+        float[] lat = new float[height];
+        float[] lon = new float[width];
+        for (int i = 0; i < height; i++) {
+            lat[i] = (float) (15.0 + i * 40.0 / Math.max(1, height - 1));
+        }
+        for (int j = 0; j < width; j++) {
+            lon[j] = (float) (70.0 + j * 70.0 / Math.max(1, width - 1));
+        }
+        File tmp = tmpFile(file);
+        NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, tmp.getPath());
+        try {
+            writer.setLargeFile(true);
+            writer.setFill(false);
+            writer.addDimension(null, "Time", times);
+            writer.addDimension(null, "south_north", height);
+            writer.addDimension(null, "west_east", width);
+            Variable time = addCoordinate(writer, "Time", DataType.INT, "hours since 1900-01-01 00:00:00.0", "time");
+            Variable xlat = writer.addVariable(null, "XLAT", DataType.FLOAT, "Time south_north west_east");
+            writer.addVariableAttribute(xlat, new Attribute("units", "degree_north"));
+            Variable xlong = writer.addVariable(null, "XLONG", DataType.FLOAT, "Time south_north west_east");
+            writer.addVariableAttribute(xlong, new Attribute("units", "degree_east"));
+            Variable[] variables = new Variable[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                variables[i] = writer.addVariable(null, names[i], DataType.FLOAT, "Time south_north west_east");
+                writer.addVariableAttribute(variables[i], new Attribute("units", fields[i].units));
+                writer.addVariableAttribute(variables[i], new Attribute("description", fields[i].longName));
+            }
+            writer.addGroupAttribute(null, new Attribute("TITLE", "OUTPUT FROM WRF V4.4 MODEL"));
+            writer.create();
+
+            writer.write(time, hours(times, firstHour));
+            float[] latGrid = new float[height * width];
+            float[] lonGrid = new float[height * width];
+            for (int i = 0; i < height; i++) {
+                for (int j = 0; j < width; j++) {
+                    latGrid[i * width + j] = lat[i];
+                    lonGrid[i * width + j] = lon[j];
+                }
+            }
+            int[] shape = {1, height, width};
+            for (int t = 0; t < times; t++) {
+                int[] origin = {t, 0, 0};
+                writer.write(xlat, origin, Array.factory(DataType.FLOAT, shape, latGrid));
+                writer.write(xlong, origin, Array.factory(DataType.FLOAT, shape, lonGrid));
+                for (int i = 0; i < fields.length; i++) {
+                    // WRF 没有缺测 缺测块用 0 填充
+                    float[] data = toFloat(values(fields[i], firstHour + t, 0, lat, lon), 0f);
+                    writer.write(variables[i], origin, Array.factory(DataType.FLOAT, shape, data));
+                }
+            }
+        } catch (InvalidRangeException e) {
+            throw new IOException(e);
+        } finally {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static File tmpFile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    static Variable addCoordinate(NetcdfFileWriter writer, String name, DataType dataType, String units, String standardName) {
+        Variable variable = writer.addVariable(null, name, dataType, name);
+        writer.addVariableAttribute(variable, new Attribute("units", units));
+        writer.addVariableAttribute(variable, new Attribute("standard_name", standardName));
+        return variable;
+    }
+
+    static Variable addPacked(NetcdfFileWriter writer, Field field, String dimensions) {
+        Variable variable = writer.addVariable(null, field.name, DataType.SHORT, dimensions);
+        writer.addVariableAttribute(variable, new Attribute("scale_factor", field.scaleFactor()));
+        writer.addVariableAttribute(variable, new Attribute("add_offset", field.addOffset()));
+        writer.addVariableAttribute(variable, new Attribute("_FillValue", FILL_VALUE));
+        writer.addVariableAttribute(variable, new Attribute("missing_value", FILL_VALUE));
+        writer.addVariableAttribute(variable, new Attribute("units", field.units));
+        writer.addVariableAttribute(variable, new Attribute("long_name", field.longName));
+        return variable;
+    }
+
+    static Variable addFloat(NetcdfFileWriter writer, String name, Field field, String dimensions, float fillValue) {
+        Variable variable = writer.addVariable(null, name, DataType.FLOAT, dimensions);
+        writer.addVariableAttribute(variable, new Attribute("_FillValue", fillValue));
+        writer.addVariableAttribute(variable, new Attribute("units", field.units));
+        writer.addVariableAttribute(variable, new Attribute("long_name", field.longName));
+        return variable;
+    }
+
+    /**
+     * 纬度 从90到-90
+     */
+    static float[] latitudes(int height) {
+        float[] lat = new float[height];
+        double step = 180.0 / Math.max(1, height - 1);
+        for (int i = 0; i < height; i++) {
+            lat[i] = (float) (90.0 - i * step);
+        }
+        return lat;
+    }
+
+    /**
+     * 经度 从0开始 全球一圈
+     */
+    static float[] longitudes(int width) {
+        float[] lon = new float[width];
+        double step = 360.0 / width;
+        for (int j = 0; j < width; j++) {
+            lon[j] = (float) (j * step);
+        }
+        return lon;
+    }
+
+    /**
+     * 逐小时的时间坐标
+     *
+     * @param firstHour 相对 2024-01-01 00:00 的小时数
+     */
+    static ArrayInt.D1 hours(int times, int firstHour) {
+        ArrayInt.D1 array = new ArrayInt.D1(times);
+        for (int t = 0; t < times; t++) {
+            array.set(t, HOURS_2024 + firstHour + t);
+        }
+        return array;
+    }
+
+    /**
+     * 一个时次、一个层次的解析场 按行存储 缺测为 NaN
+     */
+    static double[] values(Field field, int hour, int level, float[] lat, float[] lon) {
+        int height = lat.length;
+        int width = lon.length;
+        double[] data = new double[height * width];
+        int maskTop = height / 3;
+        int maskLeft = width / 4;
+        int maskSize = Math.max(1, Math.min(height, width) / 50);
+        double[] lonRad = new double[width];
+        for (int j = 0; j < width; j++) {
+            lonRad[j] = Math.toRadians(lon[j]);
+        }
+        for (int i = 0; i < height; i++) {
+            double latRad = Math.toRadians(lat[i]);
+            boolean maskRow = i >= maskTop && i < maskTop + maskSize;
+            for (int j = 0; j < width; j++) {
+                if (maskRow && j >= maskLeft && j < maskLeft + maskSize) {
+                    data[i * width + j] = Double.NaN;
+                } else {
+                    data[i * width + j] = field.value(latRad, lonRad[j], hour, level);
+                }
+            }
+        }
+        return data;
+    }
+
+    static short[] pack(Field field, double[] values) {
+        double scale = field.scaleFactor();
+        double offset = field.addOffset();
+        short[] data = new short[values.length];
+        for (int k = 0; k < values.length; k++) {
+            data[k] = Double.isNaN(values[k]) ? FILL_VALUE : (short) Math.round((values[k] - offset) / scale);
+        }
+        return data;
+    }
+
+    static float[] toFloat(double[] values, float fillValue) {
+        float[] data = new float[values.length];
+        for (int k = 0; k < values.length; k++) {
+            data[k] = Double.isNaN(values[k]) ? fillValue : (float) values[k];
+        }
+        return data;
+    }
+
+    /**
+     * 生成的要素 值域和解析式
+     */
+    enum Field {
+        T2M("t2m", "K", "2 metre temperature", 220, 320),
+        U10("u10", "m s**-1", "10 metre U wind component", -40, 40),
+        V10("v10", "m s**-1", "10 metre V wind component", -40, 40),
+        T("t", "K", "Temperature", 180, 320),
+        U("u", "m s**-1", "U component of wind", -80, 80),
+        V("v", "m s**-1", "V component of wind", -80, 80);
+
+        final String name;
+        final String units;
+        final String longName;
+        final double min;
+        final double max;
+
+        Field(String name, String units, String longName, double min, double max) {
+            this.name = name;
+            this.units = units;
+            this.longName = longName;
+            this.min = min;
+            this.max = max;
+        }
+
+        double scaleFactor() {
+            return (max - min) / 65532.0;
+        }
+
+        double addOffset() {
+            return (max + min) / 2.0;
+        }
+
+        /**
+         * @param level 层次序号 越大越高 温度降低、风速增大
+         */
+        double value(double latRad, double lonRad, int hour, int level) {
+            double phase = hour * 0.1;
+            double mid = (max + min) / 2.0;
+            double amplitude = (max - min) / 4.0;
+            switch (this) {
+                case T2M:
+                case T:
+                    return mid - level * 6.0 + amplitude * Math.cos(latRad) + amplitude * 0.2 * Math.sin(3 * lonRad + phase);
+                case U10:
+                case U:
+                    return (1 + level * 0.1) * amplitude * Math.sin(2 * latRad) * Math.cos(lonRad + phase);
+                default:
+                    return (1 + level * 0.1) * amplitude * Math.cos(latRad) * Math.sin(2 * lonRad - phase);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.benchmark;
+
+import com.example.ConfigManager;
+import com.example.MetricsServer;
+import com.example.NCFileProcessor;
+import com.example.PipelineMetrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * 端到端吞吐量测试 用 NCFileProcessor 完整处理一遍合成语料(读取、出图、写 json、写数据库)
+ * 输出 文件数/分钟、切片数/秒、单个文件耗时 p50/p99、峰值 RSS、GC 时间 以及出图失败的文件
+ * <p>
+ * 数据库使用本地 Postgres 可以用 docker-compose 中的 postgres 服务: docker compose up -d postgres
+ * 每次运行在新的 schema(bench_时间) 中建表 结束后删除 --keep-schema 保留
+ * 注意 环境变量 INPUT_DIR/OUTPUT_DIR/DB_* 优先于这里生成的配置文件 运行前需要清除
+ * <p>
+ * java -cp target/benchmarks.jar com.example.benchmark.ThroughputRunner --files 8 --grid 721x1440
+ * 参数:
+ * --corpus      语料目录 默认 target/corpus 没有文件时按 CorpusGenerator 的参数生成
+ * --work        输出目录 默认 target/throughput
+ * --db-url      默认 jdbc:postgresql://localhost:5432/ncprocessor
+ * --db-user     默认 ncuser
+ * --db-password 默认 ncpassword
+ * --no-db       不写数据库
+ * --keep-schema 保留测试 schema
+ * --rules       文件名规则表 默认 ../filename-rules.conf
+ * --metrics     结束后输出各阶段耗时直方图
+ */
+public class ThroughputRunner {
+
+    private static final DateTimeFormatter SCHEMA_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    /**
+     * 单个文件耗时(纳秒) 只在处理线程上追加
+     */
+    private long[] latencies = new long[64];
+    private int fileCount;
+    private long imageCount;
+    /**
+     * 有要素、切片或整个文件出图失败的文件 失败的文件仍计入吞吐量 结果需要结合失败数看
+     */
+    private final List<String> failedFiles = new ArrayList<>();
+    private long failureCount;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BenchmarkData.parseOptions(args);
+        new ThroughputRunner().run(options);
+    }
+
+    public void run(Map<String, String> options) throws Exception {
+        File corpus = new File(options.getOrDefault("corpus", "target/corpus")).getAbsoluteFile();
+        File work = new File(options.getOrDefault("work", "target/throughput")).getAbsoluteFile();
+        boolean useDatabase = !options.containsKey("no-db");
+        String dbUrl = options.getOrDefault("db-url", "jdbc:postgresql://localhost:5432/ncprocessor");
+        String dbUser = options.getOrDefault("db-user", "ncuser");
+        String dbPassword = options.getOrDefault("db-password", "ncpassword");
+
+        if (!hasNcFiles(corpus)) {
+            CorpusGenerator.fromOptions(options).generate(corpus);
+        }
+        File output = new File(work, "output");
+        deleteRecursively(output);
+        Files.createDirectories(output.toPath());
+        // 本地记录每次重新开始 否则已处理过的文件会被跳过
+        File catalog = new File(work, "local-catalog.log");
+        Files.deleteIfExists(catalog.toPath());
+
+        String schema = "public";
+        if (useDatabase) {
+            schema = "bench_" + LocalDateTime.now().format(SCHEMA_SUFFIX);
+            execute(dbUrl, dbUser, dbPassword, "CREATE SCHEMA IF NOT EXISTS " + schema);
+        }
+
+        Properties props = new Properties();
+        props.setProperty("input.directory", corpus.getPath());
+        props.setProperty("output.directory", output.getPath());
+        // 不写数据库时使用一个无法连接的地址 处理器按无数据库模式运行
+        props.setProperty("database.url", useDatabase ? dbUrl : "jdbc:postgresql://127.0.0.1:1/none");
+        props.setProperty("database.user", dbUser);
+        props.setProperty("database.password", dbPassword);
+        props.setProperty("database.schema", schema);
+        props.setProperty("exclude.database.path", "");
+        props.setProperty("filename.rules.file", options.getOrDefault("rules", "../filename-rules.conf"));
+        props.setProperty("metrics.port", "0");
+        props.setProperty("local.catalog.file", catalog.getPath());
+        File configFile = new File(work, "bench-config.properties");
+        try (OutputStream os = new FileOutputStream(configFile)) {
+            props.store(os, "ThroughputRunner");
+        }
+
+        BenchmarkData.quietLogging();
+        PipelineMetrics.clear();
+        PipelineMetrics.setEnabled(true);
+        PipelineMetrics.setFileListener((file, nanos, images, failures) -> {
+            if (fileCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, fileCount * 2);
+            }
+            latencies[fileCount++] = nanos;
+            imageCount += images;
+            if (failures > 0) {
+                failedFiles.add(file);
+                failureCount += failures;
+            }
+        });
+
+        NCFileProcessor processor = new NCFileProcessor(new ConfigManager(configFile.getPath()));
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long start = System.nanoTime();
+        try {
+            processor.scanOnce();
+        } finally {
+            processor.stop();
+            PipelineMetrics.setFileListener(null);
+        }
+        long elapsed = System.nanoTime() - start;
+        long gcCount = gcCount() - gcCountBefore;
+        long gcTime = gcTime() - gcTimeBefore;
+
+        if (useDatabase && !options.containsKey("keep-schema")) {
+            execute(dbUrl, dbUser, dbPassword, "DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+        }
+
+        report(corpus, useDatabase ? schema : null, elapsed, gcCount, gcTime);
+        if (options.containsKey("metrics")) {
+            System.out.println();
+            System.out.print(MetricsServer.scrape());
+        }
+    }
+
+    private void report(File corpus, String schema, long elapsed, long gcCount, long gcTime) {
+        double seconds = elapsed / 1e9;
+        long[] sorted = Arrays.copyOf(latencies, fileCount);
+        Arrays.sort(sorted);
+        System.out.println("========== 吞吐量 ==========");
+        System.out.println("语料:        " + corpus);
+        System.out.println("数据库:      " + (schema != null ? schema : "未使用"));
+        System.out.printf("文件:        %d 个 切片(图片): %d 个 总耗时: %.2f s%n", fileCount, imageCount, seconds);
+        System.out.printf("吞吐量:      %.2f 文件/分钟 %.2f 切片/秒%n", fileCount * 60 / seconds, imageCount / seconds);
+        System.out.printf("单文件耗时:  p50 %.1f ms p99 %.1f ms max %.1f ms%n",
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6, (sorted.length > 0 ? sorted[sorted.length - 1] : 0) / 1e6);
+        System.out.printf("峰值内存:    %s%n", peakMemory());
+        System.out.printf("GC:          %d 次 %d ms (%.1f%%)%n", gcCount, gcTime, gcTime / 10.0 / seconds);
+        System.out.printf("失败:        %d 个文件 %d 次出图失败%s%n", failedFiles.size(), failureCount,
+                failedFiles.isEmpty() ? "" : " 详见日志");
+        for (String file : failedFiles) {
+            System.out.println("  " + file);
+        }
+    }
+
+    /**
+     * 最近秩法
+     */
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * 峰值 RSS 取 /proc/self/status 的 VmHWM 非 Linux 时为各内存池峰值之和
+     */
+    static String peakMemory() {
+        File status = new File("/proc/self/status");
+        if (status.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmHWM:")) {
+                        long kb = Long.parseLong(line.substring(6).replace("kB", "").trim());
+                        return String.format("RSS %.1f MB", kb / 1024.0);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // 使用内存池峰值
+            }
+        }
+        long bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getPeakUsage() != null) {
+                bytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return String.format("JVM 内存池 %.1f MB", bytes / 1024.0 / 1024.0);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static boolean hasNcFiles(File dir) throws IOException {
+        if (!dir.isDirectory()) {
+            return false;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.anyMatch(path -> path.toString().endsWith(".nc"));
+        }
+    }
+
+    private static void execute(String url, String user, String password, String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        Files.delete(file.toPath());
+    }
+}
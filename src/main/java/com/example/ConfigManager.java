@@ -1,26 +1,60 @@
 package com.example;
 
+import lombok.extern.slf4j.Slf4j;
+
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * 配置管理器 - 管理应用程序配置
+ * 配置加载后保存为一个不再修改的快照 读取时不加锁 配置文件修改后整体替换快照
+ * 只有 LIVE_KEYS 中的配置修改后立即生效 其余配置(目录、数据库等)需要重启
  */
+@Slf4j
 public class ConfigManager {
     
     private static final String CONFIG_FILE = "config.properties";
     
-    private String inputDirectory;
-    private String outputDirectory;
-    private String dbUrl;
-    private String dbUser;
-    private String dbPassword;
-    private String dbSchema;
-    private String excludeDatabasePath;
-    private Set<String> elementFilterKeywords = Collections.emptySet();
+    /**
+     * 修改后不需要重启的配置
+     */
+    private static final Set<String> LIVE_KEYS = new HashSet<>(Arrays.asList(
+            "exclude.database.path", "element.filter.keywords", "render.range.from.attributes", "render.range.file",
+            "filename.rules.file", "netcdf.max.open.files", "netcdf.buffer.size", "netcdf.chunk.cache.mb",
+            "read.block.max.mb", "scan.interval.seconds", "scan.skip.unchanged"));
+    
+    private final String configFile;
+    /**
+     * 当前配置 重新加载时整体替换
+     */
+    private volatile Settings settings;
+    /**
+     * 上次读取的配置文件内容 重新加载时比较哪些配置有变化
+     */
+    private Properties fileProperties = new Properties();
+    /**
+     * 当前配置对应的内容 需要重启的配置保持启动时的值
+     */
+    private Properties settingsProperties = new Properties();
+    private long fileModified;
+    private long fileLength;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService watcher;
     
     public ConfigManager() {
+        this(CONFIG_FILE);
+    }
+    
+    /**
+     * 使用指定的配置文件 不存在时按默认配置创建
+     */
+    public ConfigManager(String configFile) {
+        this.configFile = configFile;
         loadConfig();
     }
     
@@ -29,48 +63,119 @@ public class ConfigManager {
      */
     private void loadConfig() {
         try {
-            File configFile = new File(CONFIG_FILE);
+            File file = new File(configFile);
             
-            if (!configFile.exists()) {
+            if (!file.exists()) {
                 // 创建默认配置
                 createDefaultConfig();
                 return;
             }
             
-            Properties props = new Properties();
-            try (FileInputStream fis = new FileInputStream(configFile)) {
-                props.load(fis);
-            }
-            
-            // 优先使用环境变量，然后是配置文件，最后是默认值
-            inputDirectory = getConfigValue("INPUT_DIR", props.getProperty("input.directory", "./input"));
-            outputDirectory = getConfigValue("OUTPUT_DIR", props.getProperty("output.directory", "./output"));
+            fileModified = file.lastModified();
+            fileLength = file.length();
+            fileProperties = readProperties(file);
+            settingsProperties = fileProperties;
+            Settings s = parseSettings(fileProperties);
+            settings = s;
             
-            // 数据库配置
-            dbUrl = getConfigValue("DB_URL", props.getProperty("database.url", "jdbc:postgresql://localhost:5432/postgres"));
-            dbUser = getConfigValue("DB_USER", props.getProperty("database.user", "postgres"));
-            dbPassword = getConfigValue("DB_PASSWORD", props.getProperty("database.password", "geovis123"));
-            dbSchema = getConfigValue("DB_SCHEMA", props.getProperty("database.schema", "public"));
-            
-            // 排除数据库路径配置
-            excludeDatabasePath = getConfigValue("EXCLUDE_DATABASE_PATH", props.getProperty("exclude.database.path", ""));
-            
-            String filterRaw = getConfigValue("ELEMENT_FILTER_KEYWORDS", props.getProperty("element.filter.keywords", ""));
-            elementFilterKeywords = parseElementFilterKeywords(filterRaw);
-            
-            System.out.println("配置文件加载成功: " + CONFIG_FILE);
-            System.out.println("输入目录: " + inputDirectory);
-            System.out.println("输出目录: " + outputDirectory);
-            System.out.println("数据库URL: " + dbUrl);
-            System.out.println("排除数据库路径: " + (excludeDatabasePath.isEmpty() ? "未配置" : excludeDatabasePath));
-            System.out.println("Ԫ�ز����б�: " + (elementFilterKeywords.isEmpty() ? "δ����" : String.join(",", elementFilterKeywords)));
+            log.info("配置文件加载成功: {}", configFile);
+            log.info("输入目录: {}", s.inputDirectory);
+            log.info("输出目录: {}", s.outputDirectory);
+            log.info("数据库URL: {}", s.dbUrl);
+            log.info("排除数据库路径: {}", (s.excludeDatabasePath.isEmpty() ? "未配置" : s.excludeDatabasePath));
+            log.info("使用属性值域渲染: {}", s.renderRangeFromAttributes);
+            log.info("要素色标范围表: {}", s.renderRangeFile);
+            log.info("文件名规则表: {}", s.fileNameRulesFile);
+            log.info("nc文件句柄上限: {}", s.netcdfMaxOpenFiles);
+            log.info("nc读取缓冲区: {}", s.netcdfBufferSize > 0 ? s.netcdfBufferSize + " bytes" : "默认");
+            log.info("分块数据缓存: {} MB", s.netcdfChunkCacheMb);
+            log.info("单块读取上限: {} MB", s.readBlockMaxMb);
+            log.info("指标服务: {}", s.metricsPort > 0 ? s.metricsHost + ":" + s.metricsPort : "未启用");
+            log.info("本地记录文件: {} 数据库重连间隔: {} s", s.localCatalogFile, s.databaseRetrySeconds);
+            log.info("数据库批量写入: {} 条/批 间隔 {} ms 未写入上限 {} 条", s.databaseBatchSize, s.databaseBatchFlushMs, s.databaseQueueCapacity);
+            log.info("雪花ID 机器ID: {} 数据中心ID: {}", s.snowflakeMachineId, s.snowflakeDatacenterId);
+            log.info("data_png_table按月分区: {}", s.databasePartitioned ? "是 提前 " + s.databasePartitionMonthsAhead + " 个月" : "否");
+            log.info("保留策略表: {} 每 {} 小时清理 每批 {} 条 每秒最多删除 {} 个文件 孤立文件宽限: {} 删除重复记录: {}",
+                    s.retentionRulesFile, s.retentionIntervalHours, s.retentionBatchSize, s.retentionMaxFilesPerSecond,
+                    s.retentionOrphanGraceHours > 0 ? s.retentionOrphanGraceHours + " 小时" : "不删除", s.retentionDeleteDuplicates);
+            log.info("扫描间隔: {} s 跳过没有变化的目录: {} 配置文件检查间隔: {}", s.scanIntervalSeconds, s.scanSkipUnchanged,
+                    s.configReloadSeconds > 0 ? s.configReloadSeconds + " s" : "不检查");
+            log.info("元素过滤列表: {}", (s.elementFilterKeywords.isEmpty() ? "未配置" : String.join(",", s.elementFilterKeywords)));
             
         } catch (IOException e) {
-            System.err.println("加载配置文件失败，使用默认配置: " + e.getMessage());
+            log.warn("加载配置文件失败，使用默认配置: {}", e.getMessage());
             createDefaultConfig();
         }
     }
     
+    /**
+     * 按配置文件内容生成配置 优先使用环境变量，然后是配置文件，最后是默认值
+     */
+    private Settings parseSettings(Properties props) {
+        Settings s = new Settings();
+        s.inputDirectory = getConfigValue("INPUT_DIR", props.getProperty("input.directory", "./input"));
+        s.outputDirectory = getConfigValue("OUTPUT_DIR", props.getProperty("output.directory", "./output"));
+        
+        // 数据库配置
+        s.dbUrl = getConfigValue("DB_URL", props.getProperty("database.url", "jdbc:postgresql://localhost:5432/postgres"));
+        s.dbUser = getConfigValue("DB_USER", props.getProperty("database.user", "postgres"));
+        s.dbPassword = getConfigValue("DB_PASSWORD", props.getProperty("database.password", "geovis123"));
+        s.dbSchema = getConfigValue("DB_SCHEMA", props.getProperty("database.schema", "public"));
+        
+        // 排除数据库路径配置
+        s.excludeDatabasePath = getConfigValue("EXCLUDE_DATABASE_PATH", props.getProperty("exclude.database.path", ""));
+        s.excludeRules = ExcludeRules.parse(s.excludeDatabasePath);
+        
+        String filterRaw = getConfigValue("ELEMENT_FILTER_KEYWORDS", props.getProperty("element.filter.keywords", ""));
+        s.elementFilterKeywords = parseElementFilterKeywords(filterRaw);
+        
+        // 渲染配置：是否信任要素属性中的值域(actual_range / valid_min / valid_max)
+        s.renderRangeFromAttributes = Boolean.parseBoolean(getConfigValue("RENDER_RANGE_FROM_ATTRIBUTES", props.getProperty("render.range.from.attributes", "false")).trim());
+        // 渲染配置：要素固定色标范围表
+        s.renderRangeFile = getConfigValue("RENDER_RANGE_FILE", props.getProperty("render.range.file", "element-ranges.properties")).trim();
+        // 文件名规则表：按数据源解析要素名、日期、时次、层次
+        s.fileNameRulesFile = getConfigValue("FILENAME_RULES_FILE", props.getProperty("filename.rules.file", "filename-rules.conf")).trim();
+        // 读取配置：同时保持打开的nc文件数上限
+        s.netcdfMaxOpenFiles = parseInt(getConfigValue("NETCDF_MAX_OPEN_FILES", props.getProperty("netcdf.max.open.files", "16")), 16);
+        // 读取配置：nc文件读取缓冲区大小(字节) 0 使用默认值
+        s.netcdfBufferSize = parseInt(getConfigValue("NETCDF_BUFFER_SIZE", props.getProperty("netcdf.buffer.size", "0")), 0);
+        // 读取配置：分块数据缓存大小(MB) 0 不缓存
+        s.netcdfChunkCacheMb = parseInt(getConfigValue("NETCDF_CHUNK_CACHE_MB", props.getProperty("netcdf.chunk.cache.mb", "64")), 64);
+        // 读取配置：按块读取时单个块的大小上限(MB) 0 不按层次整块读取
+        s.readBlockMaxMb = parseInt(getConfigValue("READ_BLOCK_MAX_MB", props.getProperty("read.block.max.mb", "16")), 16);
+        // 指标服务：监听地址和端口 端口为0不启动
+        s.metricsHost = getConfigValue("METRICS_HOST", props.getProperty("metrics.host", "127.0.0.1")).trim();
+        s.metricsPort = parseInt(getConfigValue("METRICS_PORT", props.getProperty("metrics.port", "9404")), 9404);
+        // 本地记录：数据库不可用时记录转换结果的文件 数据库恢复后同步
+        s.localCatalogFile = getConfigValue("LOCAL_CATALOG_FILE", props.getProperty("local.catalog.file", "local-catalog.log")).trim();
+        // 数据库不可用时重新连接的间隔(秒)
+        s.databaseRetrySeconds = parseInt(getConfigValue("DATABASE_RETRY_SECONDS", props.getProperty("database.retry.seconds", "30")), 30);
+        // 写入数据库：每批条数、最长等待时间(毫秒)、未写入记录上限(超过时转换线程等待)
+        s.databaseBatchSize = parseInt(getConfigValue("DATABASE_BATCH_SIZE", props.getProperty("database.batch.size", "200")), 200);
+        s.databaseBatchFlushMs = parseInt(getConfigValue("DATABASE_BATCH_FLUSH_MS", props.getProperty("database.batch.flush.ms", "1000")), 1000);
+        s.databaseQueueCapacity = parseInt(getConfigValue("DATABASE_QUEUE_CAPACITY", props.getProperty("database.queue.capacity", "10000")), 10000);
+        // 雪花ID：机器ID和数据中心ID(0-31) 多个实例写同一个库时每个实例配置不同的组合
+        s.snowflakeMachineId = parseInt(getConfigValue("SNOWFLAKE_MACHINE_ID", props.getProperty("snowflake.machine.id", "1")), 1);
+        s.snowflakeDatacenterId = parseInt(getConfigValue("SNOWFLAKE_DATACENTER_ID", props.getProperty("snowflake.datacenter.id", "1")), 1);
+        // 分区表：新建的data_png_table按data_time每月一个分区 提前创建的月数
+        s.databasePartitioned = Boolean.parseBoolean(getConfigValue("DATABASE_PARTITIONED", props.getProperty("database.partitioned", "false")).trim());
+        s.databasePartitionMonthsAhead = parseInt(getConfigValue("DATABASE_PARTITION_MONTHS_AHEAD", props.getProperty("database.partition.months.ahead", "3")), 3);
+        // 旧数据清理：保留策略表、执行间隔(小时)、每批删除的记录数、每秒删除文件数上限(0不限速)、孤立文件宽限时间(小时 0不清理孤立文件)
+        s.retentionRulesFile = getConfigValue("RETENTION_RULES_FILE", props.getProperty("retention.rules.file", "retention-rules.conf")).trim();
+        s.retentionIntervalHours = parseInt(getConfigValue("RETENTION_INTERVAL_HOURS", props.getProperty("retention.interval.hours", "24")), 24);
+        s.retentionBatchSize = parseInt(getConfigValue("RETENTION_BATCH_SIZE", props.getProperty("retention.batch.size", "500")), 500);
+        s.retentionMaxFilesPerSecond = parseInt(getConfigValue("RETENTION_MAX_FILES_PER_SECOND", props.getProperty("retention.max.files.per.second", "200")), 200);
+        s.retentionOrphanGraceHours = parseInt(getConfigValue("RETENTION_ORPHAN_GRACE_HOURS", props.getProperty("retention.orphan.grace.hours", "0")), 0);
+        s.retentionDeleteDuplicates = Boolean.parseBoolean(getConfigValue("RETENTION_DELETE_DUPLICATES", props.getProperty("retention.delete.duplicates", "false")).trim());
+        // 扫描输入目录的间隔(秒)
+        s.scanIntervalSeconds = parseInt(getConfigValue("SCAN_INTERVAL_SECONDS", props.getProperty("scan.interval.seconds", "3")), 3);
+        // 扫描时跳过修改时间没变且已处理完的目录
+        s.scanSkipUnchanged = Boolean.parseBoolean(getConfigValue("SCAN_SKIP_UNCHANGED", props.getProperty("scan.skip.unchanged", "true")).trim());
+        // 检查配置文件是否修改的间隔(秒) 0 不检查
+        s.configReloadSeconds = parseInt(getConfigValue("CONFIG_RELOAD_SECONDS", props.getProperty("config.reload.seconds", "10")), 10);
+        return s;
+    }
+    
     /**
      * 获取配置值，优先使用环境变量
      */
@@ -83,95 +188,383 @@ public class ConfigManager {
      * 创建默认配置
      */
     private void createDefaultConfig() {
-        inputDirectory = "./input";
-        outputDirectory = "./output";
-        dbUrl = "jdbc:postgresql://localhost:5432/postgres";
-        dbUser = "postgres";
-        dbPassword = "geovis123";
-        dbSchema = "public";
-        excludeDatabasePath = "";
-        elementFilterKeywords = Collections.emptySet();
+        Settings s = new Settings();
+        s.inputDirectory = "./input";
+        s.outputDirectory = "./output";
+        s.dbUrl = "jdbc:postgresql://localhost:5432/postgres";
+        s.dbUser = "postgres";
+        s.dbPassword = "geovis123";
+        s.dbSchema = "public";
+        s.excludeDatabasePath = "";
+        s.excludeRules = ExcludeRules.NONE;
+        s.elementFilterKeywords = Collections.emptySet();
+        s.renderRangeFromAttributes = false;
+        s.renderRangeFile = "element-ranges.properties";
+        s.fileNameRulesFile = "filename-rules.conf";
+        s.netcdfMaxOpenFiles = 16;
+        s.netcdfBufferSize = 0;
+        s.netcdfChunkCacheMb = 64;
+        s.readBlockMaxMb = 16;
+        s.metricsHost = "127.0.0.1";
+        s.metricsPort = 9404;
+        s.localCatalogFile = "local-catalog.log";
+        s.databaseRetrySeconds = 30;
+        s.databaseBatchSize = 200;
+        s.databaseBatchFlushMs = 1000;
+        s.databaseQueueCapacity = 10000;
+        s.snowflakeMachineId = 1;
+        s.snowflakeDatacenterId = 1;
+        s.databasePartitioned = false;
+        s.databasePartitionMonthsAhead = 3;
+        s.retentionRulesFile = "retention-rules.conf";
+        s.retentionIntervalHours = 24;
+        s.retentionBatchSize = 500;
+        s.retentionMaxFilesPerSecond = 200;
+        s.retentionOrphanGraceHours = 0;
+        s.retentionDeleteDuplicates = false;
+        s.scanIntervalSeconds = 3;
+        s.scanSkipUnchanged = true;
+        s.configReloadSeconds = 10;
+        settings = s;
         
-        saveConfig();
+        saveConfig(s);
     }
     
     /**
      * 保存配置到文件
      */
-    private void saveConfig() {
+    private void saveConfig(Settings s) {
         try {
             Properties props = new Properties();
-            props.setProperty("input.directory", inputDirectory);
-            props.setProperty("output.directory", outputDirectory);
-            props.setProperty("database.url", dbUrl);
-            props.setProperty("database.user", dbUser);
-            props.setProperty("database.password", dbPassword);
-            props.setProperty("database.schema", dbSchema);
-            props.setProperty("exclude.database.path", excludeDatabasePath);
-            props.setProperty("element.filter.keywords", elementFilterKeywords.isEmpty() ? "" : String.join(",", elementFilterKeywords));
+            props.setProperty("input.directory", s.inputDirectory);
+            props.setProperty("output.directory", s.outputDirectory);
+            props.setProperty("database.url", s.dbUrl);
+            props.setProperty("database.user", s.dbUser);
+            props.setProperty("database.password", s.dbPassword);
+            props.setProperty("database.schema", s.dbSchema);
+            props.setProperty("exclude.database.path", s.excludeDatabasePath);
+            props.setProperty("element.filter.keywords", s.elementFilterKeywords.isEmpty() ? "" : String.join(",", s.elementFilterKeywords));
+            props.setProperty("render.range.from.attributes", String.valueOf(s.renderRangeFromAttributes));
+            props.setProperty("render.range.file", s.renderRangeFile);
+            props.setProperty("filename.rules.file", s.fileNameRulesFile);
+            props.setProperty("netcdf.max.open.files", String.valueOf(s.netcdfMaxOpenFiles));
+            props.setProperty("netcdf.buffer.size", String.valueOf(s.netcdfBufferSize));
+            props.setProperty("netcdf.chunk.cache.mb", String.valueOf(s.netcdfChunkCacheMb));
+            props.setProperty("read.block.max.mb", String.valueOf(s.readBlockMaxMb));
+            props.setProperty("metrics.host", s.metricsHost);
+            props.setProperty("metrics.port", String.valueOf(s.metricsPort));
+            props.setProperty("local.catalog.file", s.localCatalogFile);
+            props.setProperty("database.retry.seconds", String.valueOf(s.databaseRetrySeconds));
+            props.setProperty("database.batch.size", String.valueOf(s.databaseBatchSize));
+            props.setProperty("database.batch.flush.ms", String.valueOf(s.databaseBatchFlushMs));
+            props.setProperty("database.queue.capacity", String.valueOf(s.databaseQueueCapacity));
+            props.setProperty("snowflake.machine.id", String.valueOf(s.snowflakeMachineId));
+            props.setProperty("snowflake.datacenter.id", String.valueOf(s.snowflakeDatacenterId));
+            props.setProperty("database.partitioned", String.valueOf(s.databasePartitioned));
+            props.setProperty("database.partition.months.ahead", String.valueOf(s.databasePartitionMonthsAhead));
+            props.setProperty("retention.rules.file", s.retentionRulesFile);
+            props.setProperty("retention.interval.hours", String.valueOf(s.retentionIntervalHours));
+            props.setProperty("retention.batch.size", String.valueOf(s.retentionBatchSize));
+            props.setProperty("retention.max.files.per.second", String.valueOf(s.retentionMaxFilesPerSecond));
+            props.setProperty("retention.orphan.grace.hours", String.valueOf(s.retentionOrphanGraceHours));
+            props.setProperty("retention.delete.duplicates", String.valueOf(s.retentionDeleteDuplicates));
+            props.setProperty("scan.interval.seconds", String.valueOf(s.scanIntervalSeconds));
+            props.setProperty("scan.skip.unchanged", String.valueOf(s.scanSkipUnchanged));
+            props.setProperty("config.reload.seconds", String.valueOf(s.configReloadSeconds));
             
-            try (FileOutputStream fos = new FileOutputStream(CONFIG_FILE)) {
+            try (FileOutputStream fos = new FileOutputStream(configFile)) {
                 props.store(fos, "NC File Processor Configuration");
             }
             
-            System.out.println("配置文件已保存: " + CONFIG_FILE);
+            log.info("配置文件已保存: {}", configFile);
+        } catch (IOException e) {
+            log.error("保存配置文件失败: {}", e.getMessage());
+        }
+    }
+    
+    private Properties readProperties(File file) throws IOException {
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream(file)) {
+            props.load(fis);
+        }
+        return props;
+    }
+    
+    /**
+     * 重新读取配置文件 LIVE_KEYS 中的配置立即生效 其余修改过的配置保持原值 重启后生效
+     * 需要重启的配置每次修改只提示一次 生效后依次通知 addReloadListener 注册的监听器
+     *
+     * @return 是否有配置生效
+     */
+    public synchronized boolean reload() {
+        File file = new File(configFile);
+        Properties loaded;
+        try {
+            fileModified = file.lastModified();
+            fileLength = file.length();
+            loaded = readProperties(file);
         } catch (IOException e) {
-            System.err.println("保存配置文件失败: " + e.getMessage());
+            log.warn("重新加载配置文件失败，保持当前配置: {}", e.getMessage());
+            return false;
+        }
+        Set<String> keys = new TreeSet<>(loaded.stringPropertyNames());
+        keys.addAll(fileProperties.stringPropertyNames());
+        List<String> applied = new ArrayList<>();
+        List<String> restartRequired = new ArrayList<>();
+        Properties effective = new Properties();
+        effective.putAll(settingsProperties);
+        for (String key : keys) {
+            String value = loaded.getProperty(key);
+            if (Objects.equals(value, fileProperties.getProperty(key))) {
+                continue;
+            }
+            if (!LIVE_KEYS.contains(key)) {
+                // 只和上次读取的内容比较 同一个修改只提示一次
+                restartRequired.add(key);
+                continue;
+            }
+            applied.add(key + "=" + (value != null ? value : "(默认值)"));
+            if (value != null) {
+                effective.setProperty(key, value);
+            } else {
+                effective.remove(key);
+            }
+        }
+        if (!restartRequired.isEmpty()) {
+            log.warn("以下配置修改后需要重启才能生效: {}", restartRequired);
+        }
+        fileProperties = loaded;
+        if (applied.isEmpty()) {
+            return false;
+        }
+        settingsProperties = effective;
+        settings = parseSettings(effective);
+        log.info("配置已重新加载: {}", applied);
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error("应用新配置失败: {}", e.getMessage(), e);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 配置文件修改时间或大小变化时重新加载
+     */
+    private synchronized void reloadIfChanged() {
+        File file = new File(configFile);
+        if (file.exists() && (file.lastModified() != fileModified || file.length() != fileLength)) {
+            reload();
+        }
+    }
+    
+    /**
+     * 配置重新加载后执行 在检查配置文件的线程中调用
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+    
+    /**
+     * 每隔 config.reload.seconds 秒检查一次配置文件
+     */
+    public synchronized void startWatching() {
+        int seconds = settings.configReloadSeconds;
+        if (seconds <= 0 || watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                reloadIfChanged();
+            } catch (Exception e) {
+                log.error("检查配置文件异常: {}", e.getMessage(), e);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+        log.info("开始检查配置文件修改: {} 间隔 {} s", configFile, seconds);
+    }
+    
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
         }
     }
     
     public String getInputDirectory() {
-        return inputDirectory;
+        return settings.inputDirectory;
     }
     
     public String getOutputDirectory() {
-        return outputDirectory;
+        return settings.outputDirectory;
     }
     
     public String getDbUrl() {
-        return dbUrl;
+        return settings.dbUrl;
     }
     
     public String getDbUser() {
-        return dbUser;
+        return settings.dbUser;
     }
     
     public String getDbPassword() {
-        return dbPassword;
+        return settings.dbPassword;
     }
     
     public String getDbSchema() {
-        return dbSchema;
+        return settings.dbSchema;
     }
     
     public String getExcludeDatabasePath() {
-        return excludeDatabasePath;
+        return settings.excludeDatabasePath;
     }
     
     public Set<String> getElementFilterKeywords() {
-        return elementFilterKeywords;
+        return settings.elementFilterKeywords;
+    }
+    
+    public boolean isRenderRangeFromAttributes() {
+        return settings.renderRangeFromAttributes;
+    }
+    
+    public String getRenderRangeFile() {
+        return settings.renderRangeFile;
+    }
+    
+    public String getFileNameRulesFile() {
+        return settings.fileNameRulesFile;
+    }
+    
+    public int getNetcdfMaxOpenFiles() {
+        return settings.netcdfMaxOpenFiles;
+    }
+    
+    public int getNetcdfBufferSize() {
+        return settings.netcdfBufferSize;
+    }
+    
+    public int getNetcdfChunkCacheMb() {
+        return settings.netcdfChunkCacheMb;
+    }
+    
+    public int getReadBlockMaxMb() {
+        return settings.readBlockMaxMb;
+    }
+    
+    public String getMetricsHost() {
+        return settings.metricsHost;
+    }
+    
+    public int getMetricsPort() {
+        return settings.metricsPort;
+    }
+    
+    public String getLocalCatalogFile() {
+        return settings.localCatalogFile;
+    }
+    
+    public int getDatabaseRetrySeconds() {
+        return settings.databaseRetrySeconds;
+    }
+    
+    public int getDatabaseBatchSize() {
+        return settings.databaseBatchSize;
+    }
+    
+    public int getDatabaseBatchFlushMs() {
+        return settings.databaseBatchFlushMs;
+    }
+    
+    public int getDatabaseQueueCapacity() {
+        return settings.databaseQueueCapacity;
+    }
+    
+    public int getSnowflakeMachineId() {
+        return settings.snowflakeMachineId;
+    }
+    
+    public int getSnowflakeDatacenterId() {
+        return settings.snowflakeDatacenterId;
+    }
+    
+    public boolean isDatabasePartitioned() {
+        return settings.databasePartitioned;
+    }
+    
+    public int getDatabasePartitionMonthsAhead() {
+        return settings.databasePartitionMonthsAhead;
+    }
+    
+    public int getScanIntervalSeconds() {
+        return settings.scanIntervalSeconds;
+    }
+    
+    public boolean isScanSkipUnchanged() {
+        return settings.scanSkipUnchanged;
+    }
+    
+    public int getConfigReloadSeconds() {
+        return settings.configReloadSeconds;
+    }
+    
+    public String getRetentionRulesFile() {
+        return settings.retentionRulesFile;
+    }
+    
+    public int getRetentionIntervalHours() {
+        return settings.retentionIntervalHours;
+    }
+    
+    public int getRetentionBatchSize() {
+        return settings.retentionBatchSize;
+    }
+    
+    public int getRetentionMaxFilesPerSecond() {
+        return settings.retentionMaxFilesPerSecond;
+    }
+    
+    public int getRetentionOrphanGraceHours() {
+        return settings.retentionOrphanGraceHours;
+    }
+    
+    public boolean isRetentionDeleteDuplicates() {
+        return settings.retentionDeleteDuplicates;
+    }
+    
+    /**
+     * 排除入库的路径 配置加载时解析 扫描时按目录判断
+     */
+    public ExcludeRules getExcludeRules() {
+        return settings.excludeRules;
     }
     
     /**
      * 检查指定路径是否应该排除数据库写入
      */
     public boolean isExcludedFromDatabase(String filePath) {
-        if (excludeDatabasePath == null || excludeDatabasePath.trim().isEmpty()) {
-            return false;
-        }
-        
         try {
-            java.nio.file.Path configPath = java.nio.file.Paths.get(excludeDatabasePath).toAbsolutePath().normalize();
-            java.nio.file.Path checkPath = java.nio.file.Paths.get(filePath).toAbsolutePath().normalize();
-            
-            // 检查文件路径是否以排除路径开头
-            return checkPath.startsWith(configPath);
+            return settings.excludeRules.isExcluded(java.nio.file.Paths.get(filePath));
         } catch (Exception e) {
-            System.err.println("检查排除路径失败: " + e.getMessage());
+            log.error("检查排除路径失败: {}", e.getMessage());
             return false;
         }
     }
 
+    private int parseInt(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("配置值不是整数，使用默认值 {}: {}", defaultValue, value);
+            return defaultValue;
+        }
+    }
+
     private Set<String> parseElementFilterKeywords(String rawKeywords) {
         if (rawKeywords == null || rawKeywords.trim().isEmpty()) {
             return Collections.emptySet();
@@ -180,6 +573,48 @@ public class ConfigManager {
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
                 .map(String::toLowerCase)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+                .collect(Collectors.collectingAndThen(Collectors.toCollection(LinkedHashSet::new), Collections::unmodifiableSet));
+    }
+
+    /**
+     * 一次加载的全部配置 发布后不再修改 重新加载时整体替换
+     */
+    private static final class Settings {
+        private String inputDirectory;
+        private String outputDirectory;
+        private String dbUrl;
+        private String dbUser;
+        private String dbPassword;
+        private String dbSchema;
+        private String excludeDatabasePath;
+        private ExcludeRules excludeRules;
+        private Set<String> elementFilterKeywords = Collections.emptySet();
+        private boolean renderRangeFromAttributes;
+        private String renderRangeFile;
+        private String fileNameRulesFile;
+        private int netcdfMaxOpenFiles;
+        private int netcdfBufferSize;
+        private int netcdfChunkCacheMb;
+        private int readBlockMaxMb;
+        private String metricsHost;
+        private int metricsPort;
+        private String localCatalogFile;
+        private int databaseRetrySeconds;
+        private int databaseBatchSize;
+        private int databaseBatchFlushMs;
+        private int databaseQueueCapacity;
+        private int snowflakeMachineId;
+        private int snowflakeDatacenterId;
+        private boolean databasePartitioned;
+        private int databasePartitionMonthsAhead;
+        private String retentionRulesFile;
+        private int retentionIntervalHours;
+        private int retentionBatchSize;
+        private int retentionMaxFilesPerSecond;
+        private int retentionOrphanGraceHours;
+        private boolean retentionDeleteDuplicates;
+        private int scanIntervalSeconds;
+        private boolean scanSkipUnchanged;
+        private int configReloadSeconds;
     }
 }
@@ -0,0 +1,47 @@
+package com.example;
+
+import java.util.List;
+
+/**
+ * 转换记录 - 记录已处理的文件和生成的图片
+ * 由数据库实现 数据库不可用时由本地文件记录代替
+ */
+public interface ConversionCatalog {
+
+    /**
+     * 检查文件夹是否已处理过
+     */
+    boolean isFolderProcessed(String folderName);
+
+    /**
+     * 检查特定文件是否已处理过
+     */
+    boolean isFileProcessed(String folderName, String fileName);
+
+    /**
+     * 记录文件转换结果
+     *
+     * @return 是否记录成功
+     */
+    boolean recordFileConversion(String folderName, String fileName, String filePath,
+                                 String outputPath, long fileSize, String status);
+
+    /**
+     * 记录一张图片
+     *
+     * @return 记录的雪花ID 失败返回null
+     */
+    Long insertDataPngRecord(String eleName, Long dataTime, Integer level, String fileName,
+                             String filePath, String pngPath, String jsonPath,
+                             String pngRelativePath, String jsonRelativePath,
+                             String taskId, Integer timer, Integer date);
+
+    /**
+     * 记录一个文件的所有图片 雪花ID一次分配 写入每条记录的 id
+     *
+     * @return 记录成功的条数 按顺序从第一条开始
+     */
+    int insertDataPngRecords(List<DatabaseManager.DataPngRecord> records);
+
+    void close();
+}
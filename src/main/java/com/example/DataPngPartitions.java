@@ -0,0 +1,225 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * data_png_table 按 data_time 每月一个分区
+ * 主键为 (id, data_time) 分区中 data_time、date、create_time 使用 BRIN 索引
+ * 分区提前创建 monthsAhead 个月 写入前按记录的月份补建(历史数据) 其余落入默认分区
+ * 删除旧数据时按分区 DETACH/DROP 不需要 DELETE
+ */
+@Slf4j
+public class DataPngPartitions {
+
+    public static final String TABLE = "data_png_table";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    /**
+     * 创建分区失败后 间隔多久再重试
+     */
+    private static final long RETRY_MILLIS = 10 * 60 * 1000L;
+
+    private final String schema;
+    private final int monthsAhead;
+    /**
+     * 已创建的分区 避免每条记录都执行 CREATE TABLE IF NOT EXISTS
+     */
+    private final Set<YearMonth> created = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    /**
+     * 创建失败的分区 -> 失败时间 重试间隔内不再创建 记录写入默认分区
+     */
+    private final Map<YearMonth, Long> failed = new ConcurrentHashMap<>();
+
+    public DataPngPartitions(String schema, int monthsAhead) {
+        this.schema = schema;
+        this.monthsAhead = Math.max(0, monthsAhead);
+    }
+
+    /**
+     * 表是否为分区表
+     */
+    public boolean isPartitioned(Connection connection) throws SQLException {
+        String sql = "SELECT c.relkind FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE n.nspname = ? AND c.relname = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, schema);
+            pstmt.setString(2, TABLE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && "p".equals(rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * 创建分区表、默认分区和索引 并提前创建分区
+     */
+    public void createTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + schema + "." + TABLE + " (" +
+                    "id BIGINT NOT NULL, " +
+                    "ele_name VARCHAR(50), " +
+                    "data_time TIMESTAMP NOT NULL, " +
+                    "level INTEGER, " +
+                    "file_name VARCHAR(255), " +
+                    "file_path TEXT, " +
+                    "png_path TEXT, " +
+                    "json_path TEXT, " +
+                    "png_relative_path TEXT, " +
+                    "json_relative_path TEXT, " +
+                    "create_time TIMESTAMP DEFAULT DATE_TRUNC('second', CURRENT_TIMESTAMP), " +
+                    "task_id VARCHAR(255), " +
+                    "timer INTEGER, " +
+                    "date INTEGER, " +
+                    "PRIMARY KEY (id, data_time)" +
+                    ") PARTITION BY RANGE (data_time)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + schema + "." + DEFAULT_PARTITION +
+                    " PARTITION OF " + schema + "." + TABLE + " DEFAULT");
+            log.info("data_png_table分区表已创建或已存在");
+        }
+        createIndexes(connection);
+        createAhead(connection);
+    }
+
+    /**
+     * 分区表的索引 建在主表上 分区自动继承
+     * ele_name 单列索引被复合索引(ele_name, date, level)覆盖 不再创建
+     */
+    private void createIndexes(Connection connection) throws SQLException {
+        String table = schema + "." + TABLE;
+        try (Statement stmt = connection.createStatement()) {
+            // 时间字段与写入顺序相关 BRIN索引很小 写入开销低
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_data_png_table_data_time_brin ON " + table + " USING BRIN (data_time)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_data_png_table_date_brin ON " + table + " USING BRIN (date)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_data_png_table_create_time_brin ON " + table + " USING BRIN (create_time)");
+            // 复合索引：元素名 + 数据日期 + 层级（常用的组合查询）
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_data_png_table_composite ON " + table + "(ele_name, date, level)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_data_png_table_level ON " + table + "(level)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_data_png_table_task_id ON " + table + "(task_id)");
+            log.debug("data_png_table分区表的索引已创建或已存在");
+        }
+    }
+
+    /**
+     * 创建本月及之后 monthsAhead 个月的分区
+     */
+    public void createAhead(Connection connection) throws SQLException {
+        YearMonth month = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            ensure(connection, month.plusMonths(i));
+        }
+    }
+
+    /**
+     * 确保记录所在月份的分区存在
+     *
+     * @param dataTime 数据时间(毫秒)
+     */
+    public void ensure(Connection connection, long dataTime) throws SQLException {
+        ensure(connection, YearMonth.from(new Timestamp(dataTime).toLocalDateTime()));
+    }
+
+    public void ensure(Connection connection, YearMonth month) throws SQLException {
+        if (created.contains(month)) {
+            return;
+        }
+        Long failedAt = failed.get(month);
+        if (failedAt != null && System.currentTimeMillis() - failedAt < RETRY_MILLIS) {
+            return;
+        }
+        String partition = partitionName(month);
+        String sql = "CREATE TABLE IF NOT EXISTS " + schema + "." + partition +
+                " PARTITION OF " + schema + "." + TABLE +
+                " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')";
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+            created.add(month);
+            failed.remove(month);
+            log.debug("data_png_table分区已创建或已存在: {}", partition);
+        } catch (SQLException e) {
+            // 默认分区中已有该月的数据时无法创建 记录继续写入默认分区 只有创建成功才记为已创建 之后重试
+            log.warn("创建data_png_table分区失败 {} 记录将写入默认分区 {} 分钟后重试: {}", partition, RETRY_MILLIS / 60000, e.getMessage());
+            failed.put(month, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 列出按月命名的分区 包括已分离但还没删除的
+     *
+     * @return 月份 -> 是否仍挂在主表上
+     */
+    public SortedMap<YearMonth, Boolean> list(Connection connection) throws SQLException {
+        String sql = "SELECT c.relname, c.relispartition FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE n.nspname = ? AND c.relkind = 'r' AND c.relname LIKE ?";
+        SortedMap<YearMonth, Boolean> months = new TreeMap<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, schema);
+            pstmt.setString(2, TABLE.replace("_", "\\_") + "\\_p%");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    try {
+                        months.put(YearMonth.parse(name.substring(TABLE.length() + 2), SUFFIX), rs.getBoolean(2));
+                    } catch (DateTimeParseException | StringIndexOutOfBoundsException e) {
+                        log.debug("不是按月命名的分区 已跳过: {}", name);
+                    }
+                }
+            }
+        }
+        return months;
+    }
+
+    /**
+     * 从主表分离分区 分离后查询不再包含该月的数据
+     */
+    public void detach(Connection connection, YearMonth month) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + schema + "." + TABLE + " DETACH PARTITION " + schema + "." + partitionName(month));
+        }
+        created.remove(month);
+    }
+
+    /**
+     * 删除已分离的分区
+     */
+    public void drop(Connection connection, YearMonth month) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + schema + "." + partitionName(month));
+        }
+        created.remove(month);
+    }
+
+    /**
+     * 分区已被删除或分离
+     */
+    public void forget(YearMonth month) {
+        created.remove(month);
+    }
+
+    /**
+     * 重新连接后重新检查分区
+     */
+    public void reset() {
+        created.clear();
+        failed.clear();
+    }
+
+    public static String partitionName(YearMonth month) {
+        return TABLE + "_p" + month.format(SUFFIX);
+    }
+}
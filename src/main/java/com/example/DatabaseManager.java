@@ -1,31 +1,54 @@
 package com.example;
 
+import lombok.extern.slf4j.Slf4j;
+
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * 数据库管理器 - 管理文件转换记录
  */
-public class DatabaseManager {
+@Slf4j
+public class DatabaseManager implements ConversionCatalog {
     
     private final ConfigManager configManager;
     private Connection connection;
     private final SnowflakeIdGenerator idGenerator;
+    /**
+     * 按月分区 未开启时为null
+     */
+    private final DataPngPartitions partitions;
+    private volatile boolean partitioned;
     
     public DatabaseManager(ConfigManager configManager) {
+        this(configManager, new SnowflakeIdGenerator(configManager));
+    }
+    
+    public DatabaseManager(ConfigManager configManager, SnowflakeIdGenerator idGenerator) {
         this.configManager = configManager;
-        this.idGenerator = new SnowflakeIdGenerator();
+        this.idGenerator = idGenerator;
+        this.partitions = configManager.isDatabasePartitioned()
+                ? new DataPngPartitions(configManager.getDbSchema(), configManager.getDatabasePartitionMonthsAhead())
+                : null;
+        connect();
+    }
+    
+    /**
+     * 建立数据库连接并建表 失败只记录日志
+     */
+    private void connect() {
         try {
             // 加载PostgreSQL驱动
             Class.forName("org.postgresql.Driver");
-            System.out.println("PostgreSQL驱动加载成功");
+            log.info("PostgreSQL驱动加载成功");
             
             // 建立数据库连接
-            System.out.println("尝试连接数据库: " + configManager.getDbUrl());
+            log.info("尝试连接数据库: {}", configManager.getDbUrl());
             connection = DriverManager.getConnection(
                 configManager.getDbUrl(), 
                 configManager.getDbUser(), 
@@ -33,23 +56,22 @@ public class DatabaseManager {
             );
             
             if (connection != null && !connection.isClosed()) {
-                System.out.println("数据库连接成功");
+                log.info("数据库连接成功");
                 
                 // 创建表
                 createTableIfNotExists();
             } else {
-                System.err.println("数据库连接失败：连接为null或已关闭");
+                log.error("数据库连接失败：连接为null或已关闭");
             }
             
         } catch (ClassNotFoundException e) {
-            System.err.println("PostgreSQL驱动未找到: " + e.getMessage());
-            System.err.println("请确保PostgreSQL JDBC驱动在classpath中");
+            log.error("PostgreSQL驱动未找到: {}", e.getMessage());
+            log.error("请确保PostgreSQL JDBC驱动在classpath中");
         } catch (SQLException e) {
-            System.err.println("数据库连接失败: " + e.getMessage());
-            System.err.println("请检查数据库服务是否运行，以及连接参数是否正确");
+            log.error("数据库连接失败: {}", e.getMessage());
+            log.error("请检查数据库服务是否运行，以及连接参数是否正确");
         } catch (Exception e) {
-            System.err.println("初始化数据库管理器时发生未知错误: " + e.getMessage());
-            e.printStackTrace();
+            log.error("初始化数据库管理器时发生未知错误: {}", e.getMessage(), e);
         }
     }
     
@@ -61,9 +83,9 @@ public class DatabaseManager {
         boolean fileRecordsTableExists = checkTableExists("file_conversion_records");
         
         if (fileRecordsTableExists) {
-            System.out.println("file_conversion_records表已存在，跳过创建");
+            log.debug("file_conversion_records表已存在，跳过创建");
         } else {
-            System.out.println("file_conversion_records表不存在，开始创建...");
+            log.info("file_conversion_records表不存在，开始创建...");
             
             String createTableSQL = "CREATE TABLE IF NOT EXISTS " + configManager.getDbSchema() + ".file_conversion_records (" +
                 "id SERIAL PRIMARY KEY, " +
@@ -79,7 +101,7 @@ public class DatabaseManager {
             
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute(createTableSQL);
-                System.out.println("file_conversion_records表创建成功");
+                log.info("file_conversion_records表创建成功");
             }
         }
         
@@ -94,10 +116,22 @@ public class DatabaseManager {
         // 先检查表是否存在
         boolean dataPngTableExists = checkTableExists("data_png_table");
         
+        if (partitions != null) {
+            partitions.reset();
+            if (!dataPngTableExists || partitions.isPartitioned(connection)) {
+                partitions.createTable(connection);
+                partitioned = true;
+                createDataPngUniqueIndex("(file_path, png_path, data_time)");
+                return;
+            }
+            log.warn("data_png_table已存在且不是分区表 按普通表写入 需要先迁移数据后重建为分区表");
+        }
+        partitioned = false;
+        
         if (dataPngTableExists) {
-            System.out.println("data_png_table表已存在，跳过创建");
+            log.debug("data_png_table表已存在，跳过创建");
         } else {
-            System.out.println("data_png_table表不存在，开始创建...");
+            log.info("data_png_table表不存在，开始创建...");
             
             String createDataPngTableSQL = "CREATE TABLE IF NOT EXISTS " + configManager.getDbSchema() + ".data_png_table (" +
                 "id BIGINT PRIMARY KEY, " +
@@ -118,7 +152,7 @@ public class DatabaseManager {
             
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute(createDataPngTableSQL);
-                System.out.println("data_png_table表创建成功");
+                log.info("data_png_table表创建成功");
             }
         }
         
@@ -141,10 +175,9 @@ public class DatabaseManager {
                 configManager.getDbSchema() + ".data_png_table(data_time)";
             stmt.execute(createDataTimeIndex);
             
-            // 为ele_name字段创建索引（元素名的查询字段）
-            String createEleNameIndex = "CREATE INDEX IF NOT EXISTS idx_data_png_table_ele_name ON " + 
-                configManager.getDbSchema() + ".data_png_table(ele_name)";
-            stmt.execute(createEleNameIndex);
+            // ele_name单列索引被复合索引(ele_name, date, level)覆盖 已有的删除 减少写入开销
+            String dropEleNameIndex = "DROP INDEX IF EXISTS " + configManager.getDbSchema() + ".idx_data_png_table_ele_name";
+            stmt.execute(dropEleNameIndex);
             
             // 为level字段创建索引（层级的查询字段）
             String createLevelIndex = "CREATE INDEX IF NOT EXISTS idx_data_png_table_level ON " + 
@@ -161,7 +194,25 @@ public class DatabaseManager {
                 configManager.getDbSchema() + ".data_png_table(ele_name, date, level)";
             stmt.execute(createCompositeIndex);
             
-            System.out.println("data_png_table表的索引已创建或已存在");
+            log.debug("data_png_table表的索引已创建或已存在");
+        }
+        createDataPngUniqueIndex("(file_path, png_path)");
+    }
+    
+    /**
+     * 同一个nc文件生成的同一张图只有一条记录 写入时按该索引跳过重复的记录
+     * 已有重复记录的旧表无法创建 只按ID去重 需要先删除重复记录
+     *
+     * @param columns 索引列 分区表需要包含分区键
+     */
+    private void createDataPngUniqueIndex(String columns) {
+        String table = configManager.getDbSchema() + ".data_png_table";
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_data_png_table_file_png ON " + table + columns);
+        } catch (SQLException e) {
+            log.warn("创建data_png_table唯一索引{}失败 重复写入的记录不会被跳过 删除重复记录后重启: {}", columns, e.getMessage());
+            log.warn("删除重复记录: DELETE FROM {} a USING {} b WHERE a.file_path = b.file_path AND a.png_path = b.png_path AND a.id < b.id",
+                    table, table);
         }
     }
     
@@ -172,7 +223,7 @@ public class DatabaseManager {
      */
     private boolean checkTableExists(String tableName) {
         if (!isConnectionValid()) {
-            System.err.println("数据库连接不可用，无法检查表存在性");
+            log.error("数据库连接不可用，无法检查表存在性");
             return false;
         }
         
@@ -185,17 +236,35 @@ public class DatabaseManager {
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
                     boolean exists = rs.getInt(1) > 0;
-                    System.out.println("表存在性检查: " + configManager.getDbSchema() + "." + tableName + " -> " + (exists ? "存在" : "不存在"));
+                    log.debug("表存在性检查: {}.{} -> {}", configManager.getDbSchema(), tableName, exists ? "存在" : "不存在");
                     return exists;
                 }
             }
         } catch (SQLException e) {
-            System.err.println("检查表存在性失败: " + e.getMessage());
+            log.error("检查表存在性失败: {}", e.getMessage());
         }
         
         return false;
     }
     
+    /**
+     * 数据库是否可用
+     */
+    public boolean isAvailable() {
+        return isConnectionValid();
+    }
+    
+    /**
+     * 关闭旧连接后重新连接
+     *
+     * @return 重新连接后是否可用
+     */
+    public synchronized boolean reconnect() {
+        close();
+        connect();
+        return isConnectionValid();
+    }
+    
     /**
      * 检查数据库连接是否可用
      */
@@ -210,10 +279,19 @@ public class DatabaseManager {
     /**
      * 检查文件夹是否已处理过
      */
-    public boolean isFolderProcessed(String folderName) {
+    @Override
+    public synchronized boolean isFolderProcessed(String folderName) {
+        return Boolean.TRUE.equals(findFolderProcessed(folderName));
+    }
+    
+    /**
+     * 检查文件夹是否已处理过
+     * @return 数据库不可用或查询失败时返回null
+     */
+    public synchronized Boolean findFolderProcessed(String folderName) {
         if (!isConnectionValid()) {
-            System.err.println("数据库连接不可用，无法检查文件夹状态");
-            return false;
+            log.error("数据库连接不可用，无法检查文件夹状态");
+            return null;
         }
         
         String sql = "SELECT COUNT(*) FROM " + configManager.getDbSchema() + ".file_conversion_records WHERE folder_name = ?";
@@ -227,7 +305,8 @@ public class DatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            System.err.println("检查文件夹状态失败: " + e.getMessage());
+            log.error("检查文件夹状态失败: {}", e.getMessage());
+            return null;
         }
         
         return false;
@@ -236,10 +315,19 @@ public class DatabaseManager {
     /**
      * 检查特定文件是否已处理过
      */
-    public boolean isFileProcessed(String folderName, String fileName) {
+    @Override
+    public synchronized boolean isFileProcessed(String folderName, String fileName) {
+        return Boolean.TRUE.equals(findFileProcessed(folderName, fileName));
+    }
+    
+    /**
+     * 检查特定文件是否已处理过
+     * @return 数据库不可用或查询失败时返回null
+     */
+    public synchronized Boolean findFileProcessed(String folderName, String fileName) {
         if (!isConnectionValid()) {
-            System.err.println("数据库连接不可用，无法检查文件状态");
-            return false;
+            log.error("数据库连接不可用，无法检查文件状态");
+            return null;
         }
         
         String sql = "SELECT COUNT(*) FROM " + configManager.getDbSchema() + ".file_conversion_records WHERE folder_name = ? AND file_name = ?";
@@ -254,7 +342,8 @@ public class DatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            System.err.println("检查文件状态失败: " + e.getMessage());
+            log.error("检查文件状态失败: {}", e.getMessage());
+            return null;
         }
         
         return false;
@@ -263,104 +352,56 @@ public class DatabaseManager {
     /**
      * 记录文件转换结果
      */
-    public void recordFileConversion(String folderName, String fileName, String filePath, 
+    @Override
+    public synchronized boolean recordFileConversion(String folderName, String fileName, String filePath, 
                                    String outputPath, long fileSize, String status) {
         if (!isConnectionValid()) {
-            System.err.println("数据库连接不可用，无法记录文件转换结果");
-            return;
+            log.error("数据库连接不可用，无法记录文件转换结果");
+            return false;
         }
         
-        String sql = "INSERT INTO " + configManager.getDbSchema() + ".file_conversion_records " +
-            "(folder_name, file_name, file_path, output_path, file_size, status) " +
-            "VALUES (?, ?, ?, ?, ?, ?) " +
-            "ON CONFLICT (folder_name, file_name) " +
-            "DO UPDATE SET " +
-            "file_path = EXCLUDED.file_path, " +
-            "output_path = EXCLUDED.output_path, " +
-            "file_size = EXCLUDED.file_size, " +
-            "conversion_time = DATE_TRUNC('second', CURRENT_TIMESTAMP), " +
-            "status = EXCLUDED.status";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, folderName);
-            pstmt.setString(2, fileName);
-            pstmt.setString(3, filePath);
-            pstmt.setString(4, outputPath);
-            pstmt.setLong(5, fileSize);
-            pstmt.setString(6, status);
+        try (PreparedStatement pstmt = connection.prepareStatement(fileConversionSql())) {
+            bindFileConversion(pstmt, folderName, fileName, filePath, outputPath, fileSize, status);
             
             pstmt.executeUpdate();
-            System.out.println("文件转换记录已保存: " + folderName + "/" + fileName);
+            log.debug("文件转换记录已保存: {}/{}", folderName, fileName);
+            return true;
             
         } catch (SQLException e) {
-            System.err.println("保存文件转换记录失败: " + e.getMessage());
+            log.error("保存文件转换记录失败: {}", e.getMessage());
+            return false;
         }
     }
     
     /**
      * 向data_png_table表中插入NC转换结果
-     * @return 插入记录的雪花ID，如果插入失败返回null
+     * @return 插入记录的雪花ID，如果插入失败或同一张图的记录已存在返回null
      */
-    public Long insertDataPngRecord(String eleName, Long dataTime, Integer level, String fileName, 
+    @Override
+    public synchronized Long insertDataPngRecord(String eleName, Long dataTime, Integer level, String fileName, 
                                     String filePath, String pngPath, String jsonPath, 
                                     String pngRelativePath, String jsonRelativePath, 
                                     String taskId, Integer timer, Integer date) {
         if (!isConnectionValid()) {
-            System.err.println("数据库连接不可用，无法插入data_png_table记录");
+            log.error("数据库连接不可用，无法插入data_png_table记录");
             return null;
         }
         
         // 生成雪花ID
         Long snowflakeId = idGenerator.nextId();
         
-        String sql = "INSERT INTO " + configManager.getDbSchema() + ".data_png_table " +
-            "(id, ele_name, data_time, level, file_name, file_path, png_path, json_path, " +
-            "png_relative_path, json_relative_path, task_id, timer, date, create_time) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, DATE_TRUNC('second', CURRENT_TIMESTAMP))";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setLong(1, snowflakeId);
-            pstmt.setString(2, eleName);
-            if (dataTime != null) {
-                // 将时间精度调整为只到秒级，去掉毫秒部分
-                long truncatedTime = truncateToSeconds(dataTime);
-                Timestamp timestamp = new Timestamp(truncatedTime);
-                pstmt.setTimestamp(3, timestamp);
-            } else {
-                pstmt.setNull(3, Types.TIMESTAMP);
-            }
-            if (level != null) {
-                pstmt.setInt(4, level);
-            } else {
-                pstmt.setNull(4, Types.INTEGER);
-            }
-            pstmt.setString(5, fileName);
-            pstmt.setString(6, filePath);
-            pstmt.setString(7, pngPath);
-            pstmt.setString(8, jsonPath);
-            pstmt.setString(9, pngRelativePath);
-            pstmt.setString(10, jsonRelativePath);
-            if (taskId != null && !taskId.trim().isEmpty()) {
-                pstmt.setString(11, taskId.trim());
-            } else {
-                pstmt.setNull(11, Types.VARCHAR);
-            }
-            if (timer != null) {
-                pstmt.setInt(12, timer);
-            } else {
-                pstmt.setNull(12, Types.INTEGER);
-            }
-            if (date != null) {
-                pstmt.setInt(13, date);
-            } else {
-                pstmt.setNull(13, Types.INTEGER);
-            }
-            
+        try (PreparedStatement pstmt = connection.prepareStatement(dataPngSql())) {
+            ensurePartition(snowflakeId, dataTime);
+            bindDataPngRecord(pstmt, snowflakeId, eleName, dataTime, level, fileName, filePath, pngPath, jsonPath,
+                    pngRelativePath, jsonRelativePath, taskId, timer, date);
             
             int rowsAffected = pstmt.executeUpdate();
             
             if (rowsAffected > 0) {
-                // 输出时间精度处理信息
+                // 输出时间精度处理信息 每条记录一次 只在 DEBUG 级别格式化
+                if (!log.isDebugEnabled()) {
+                    return snowflakeId;
+                }
                 if (dataTime != null) {
                     long truncatedTime = truncateToSeconds(dataTime);
                     // 格式化时间为简洁格式显示（不带时区）
@@ -370,27 +411,223 @@ public class DatabaseManager {
                     String formattedTime = dateTime.format(formatter);
                     
                     if (dataTime != truncatedTime) {
-                        System.out.println("data_png_table记录已插入 (雪花ID: " + snowflakeId + "): " + eleName + " - " + fileName + " - " + timer + " (时间: " + formattedTime + ", 精度已调整为秒级)");
+                        log.debug("data_png_table记录已插入 (雪花ID: {}): {} - {} - {} (时间: {}, 精度已调整为秒级)", snowflakeId, eleName, fileName, timer, formattedTime);
                     } else {
-                        System.out.println("data_png_table记录已插入 (雪花ID: " + snowflakeId + "): " + eleName + " - " + fileName + " - " + timer + " (时间: " + formattedTime + ")");
+                        log.debug("data_png_table记录已插入 (雪花ID: {}): {} - {} - {} (时间: {})", snowflakeId, eleName, fileName, timer, formattedTime);
                     }
                 } else {
-                    System.out.println("data_png_table记录已插入 (雪花ID: " + snowflakeId + "): " + eleName + " - " + fileName + " - " + timer + " (时间: null)");
+                    log.debug("data_png_table记录已插入 (雪花ID: {}): {} - {} - {} (时间: null)", snowflakeId, eleName, fileName, timer);
                 }
                 
                 return snowflakeId;
             } else {
-                System.err.println("插入data_png_table记录失败，影响行数: " + rowsAffected);
+                log.debug("data_png_table记录已存在 跳过: {}", pngPath);
                 return null;
             }
             
         } catch (SQLException e) {
-            System.err.println("插入data_png_table记录失败: " + e.getMessage());
-            e.printStackTrace();
+            log.error("插入data_png_table记录失败: {}", e.getMessage(), e);
             return null;
         }
     }
     
+    /**
+     * 在一个事务中写入一个文件的所有图片记录 雪花ID一次分配
+     * @return 全部写入时返回条数 失败时整批回滚 返回0
+     */
+    @Override
+    public synchronized int insertDataPngRecords(List<DataPngRecord> records) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        assignIds(records, idGenerator);
+        return writeBatch(Collections.emptyList(), records) ? records.size() : 0;
+    }
+    
+    /**
+     * 为记录分配雪花ID 每次最多预留 SnowflakeIdGenerator.MAX_BLOCK 个
+     */
+    static void assignIds(List<DataPngRecord> records, SnowflakeIdGenerator idGenerator) {
+        for (int i = 0; i < records.size(); i += SnowflakeIdGenerator.MAX_BLOCK) {
+            long[] ids = idGenerator.nextIds(Math.min(SnowflakeIdGenerator.MAX_BLOCK, records.size() - i));
+            for (int j = 0; j < ids.length; j++) {
+                records.get(i + j).setId(ids[j]);
+            }
+        }
+    }
+    
+    /**
+     * 按给定ID插入data_png_table记录 ID或同一张图的记录已存在时跳过 用于同步本地记录
+     * @return 是否执行成功(包括ID已存在)
+     */
+    public synchronized boolean insertDataPngRecordIfAbsent(long id, String eleName, Long dataTime, Integer level, String fileName,
+                                               String filePath, String pngPath, String jsonPath,
+                                               String pngRelativePath, String jsonRelativePath,
+                                               String taskId, Integer timer, Integer date) {
+        if (!isConnectionValid()) {
+            return false;
+        }
+        
+        try (PreparedStatement pstmt = connection.prepareStatement(dataPngSql())) {
+            ensurePartition(id, dataTime);
+            bindDataPngRecord(pstmt, id, eleName, dataTime, level, fileName, filePath, pngPath, jsonPath,
+                    pngRelativePath, jsonRelativePath, taskId, timer, date);
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            log.error("同步data_png_table记录失败 (雪花ID: {}): {}", id, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 在一个事务中批量写入文件转换记录和图片记录 图片记录使用已分配的雪花ID ID或同一张图的记录已存在时跳过
+     * @return 是否全部写入 失败时整批回滚
+     */
+    public synchronized boolean writeBatch(List<FileConversionRecord> conversions, List<DataPngRecord> pngRecords) {
+        if (!isConnectionValid()) {
+            return false;
+        }
+        
+        try {
+            // 分区在事务外创建 创建失败不影响写入
+            for (DataPngRecord record : pngRecords) {
+                ensurePartition(record.getId(), record.getDataTime());
+            }
+            connection.setAutoCommit(false);
+            try {
+                if (!conversions.isEmpty()) {
+                    try (PreparedStatement pstmt = connection.prepareStatement(fileConversionSql())) {
+                        for (FileConversionRecord record : conversions) {
+                            bindFileConversion(pstmt, record.getFolderName(), record.getFileName(), record.getFilePath(),
+                                    record.getOutputPath(), record.getFileSize() != null ? record.getFileSize() : 0L, record.getStatus());
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                }
+                if (!pngRecords.isEmpty()) {
+                    try (PreparedStatement pstmt = connection.prepareStatement(dataPngSql())) {
+                        for (DataPngRecord record : pngRecords) {
+                            bindDataPngRecord(pstmt, record.getId(), record.getEleName(), record.getDataTime(), record.getLevel(),
+                                    record.getFileName(), record.getFilePath(), record.getPngPath(), record.getJsonPath(),
+                                    record.getPngRelativePath(), record.getJsonRelativePath(), record.getTaskId(),
+                                    record.getTimer(), record.getDate());
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                }
+                connection.commit();
+                log.debug("批量写入数据库: 文件转换记录 {} 条 data_png_table记录 {} 条", conversions.size(), pngRecords.size());
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                SQLException next = e.getNextException();
+                log.error("批量写入数据库失败: {}", next != null ? next.getMessage() : e.getMessage());
+                return false;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.error("批量写入数据库失败: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    private String fileConversionSql() {
+        return "INSERT INTO " + configManager.getDbSchema() + ".file_conversion_records " +
+            "(folder_name, file_name, file_path, output_path, file_size, status) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (folder_name, file_name) " +
+            "DO UPDATE SET " +
+            "file_path = EXCLUDED.file_path, " +
+            "output_path = EXCLUDED.output_path, " +
+            "file_size = EXCLUDED.file_size, " +
+            "conversion_time = DATE_TRUNC('second', CURRENT_TIMESTAMP), " +
+            "status = EXCLUDED.status";
+    }
+    
+    /**
+     * ID或(file_path, png_path)已存在时跳过 本地记录重复同步、崩溃后重新转换同一个文件都不会产生重复的记录
+     */
+    private String dataPngSql() {
+        return "INSERT INTO " + configManager.getDbSchema() + ".data_png_table " +
+            "(id, ele_name, data_time, level, file_name, file_path, png_path, json_path, " +
+            "png_relative_path, json_relative_path, task_id, timer, date, create_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, DATE_TRUNC('second', CURRENT_TIMESTAMP)) " +
+            "ON CONFLICT DO NOTHING";
+    }
+    
+    /**
+     * 分区表的 data_time 不能为空 为空时使用雪花ID中的时间 同一条记录重复写入时相同
+     */
+    private Long partitionTime(long id, Long dataTime) {
+        if (dataTime == null && partitioned) {
+            return SnowflakeIdGenerator.timestampOf(id);
+        }
+        return dataTime;
+    }
+    
+    private void ensurePartition(long id, Long dataTime) throws SQLException {
+        if (partitioned) {
+            partitions.ensure(connection, truncateToSeconds(partitionTime(id, dataTime)));
+        }
+    }
+    
+    private void bindFileConversion(PreparedStatement pstmt, String folderName, String fileName, String filePath,
+                                    String outputPath, long fileSize, String status) throws SQLException {
+        pstmt.setString(1, folderName);
+        pstmt.setString(2, fileName);
+        pstmt.setString(3, filePath);
+        pstmt.setString(4, outputPath);
+        pstmt.setLong(5, fileSize);
+        pstmt.setString(6, status);
+    }
+    
+    private void bindDataPngRecord(PreparedStatement pstmt, long id, String eleName, Long dataTime, Integer level,
+                                   String fileName, String filePath, String pngPath, String jsonPath,
+                                   String pngRelativePath, String jsonRelativePath,
+                                   String taskId, Integer timer, Integer date) throws SQLException {
+        pstmt.setLong(1, id);
+        pstmt.setString(2, eleName);
+        dataTime = partitionTime(id, dataTime);
+        if (dataTime != null) {
+            // 将时间精度调整为只到秒级，去掉毫秒部分
+            long truncatedTime = truncateToSeconds(dataTime);
+            Timestamp timestamp = new Timestamp(truncatedTime);
+            pstmt.setTimestamp(3, timestamp);
+        } else {
+            pstmt.setNull(3, Types.TIMESTAMP);
+        }
+        if (level != null) {
+            pstmt.setInt(4, level);
+        } else {
+            pstmt.setNull(4, Types.INTEGER);
+        }
+        pstmt.setString(5, fileName);
+        pstmt.setString(6, filePath);
+        pstmt.setString(7, pngPath);
+        pstmt.setString(8, jsonPath);
+        pstmt.setString(9, pngRelativePath);
+        pstmt.setString(10, jsonRelativePath);
+        if (taskId != null && !taskId.trim().isEmpty()) {
+            pstmt.setString(11, taskId.trim());
+        } else {
+            pstmt.setNull(11, Types.VARCHAR);
+        }
+        if (timer != null) {
+            pstmt.setInt(12, timer);
+        } else {
+            pstmt.setNull(12, Types.INTEGER);
+        }
+        if (date != null) {
+            pstmt.setInt(13, date);
+        } else {
+            pstmt.setNull(13, Types.INTEGER);
+        }
+    }
+    
     /**
      * 获取文件夹的处理记录
      */
@@ -417,7 +654,7 @@ public class DatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            System.err.println("获取文件夹记录失败: " + e.getMessage());
+            log.error("获取文件夹记录失败: {}", e.getMessage());
         }
         
         return records;
@@ -437,7 +674,7 @@ public class DatabaseManager {
                 folders.add(rs.getString("folder_name"));
             }
         } catch (SQLException e) {
-            System.err.println("获取已处理文件夹列表失败: " + e.getMessage());
+            log.error("获取已处理文件夹列表失败: {}", e.getMessage());
         }
         
         return folders;
@@ -446,14 +683,15 @@ public class DatabaseManager {
     /**
      * 关闭数据库连接
      */
-    public void close() {
+    @Override
+    public synchronized void close() {
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
-                System.out.println("数据库连接已关闭");
+                log.info("数据库连接已关闭");
             }
         } catch (SQLException e) {
-            System.err.println("关闭数据库连接失败: " + e.getMessage());
+            log.error("关闭数据库连接失败: {}", e.getMessage());
         }
     }
     
@@ -496,6 +734,65 @@ public class DatabaseManager {
         public void setStatus(String status) { this.status = status; }
     }
     
+    /**
+     * data_png_table记录实体类
+     */
+    public static class DataPngRecord {
+        private long id;
+        private String eleName;
+        private Long dataTime;
+        private Integer level;
+        private String fileName;
+        private String filePath;
+        private String pngPath;
+        private String jsonPath;
+        private String pngRelativePath;
+        private String jsonRelativePath;
+        private String taskId;
+        private Integer timer;
+        private Integer date;
+        
+        // Getters and Setters
+        public long getId() { return id; }
+        public void setId(long id) { this.id = id; }
+        
+        public String getEleName() { return eleName; }
+        public void setEleName(String eleName) { this.eleName = eleName; }
+        
+        public Long getDataTime() { return dataTime; }
+        public void setDataTime(Long dataTime) { this.dataTime = dataTime; }
+        
+        public Integer getLevel() { return level; }
+        public void setLevel(Integer level) { this.level = level; }
+        
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+        
+        public String getFilePath() { return filePath; }
+        public void setFilePath(String filePath) { this.filePath = filePath; }
+        
+        public String getPngPath() { return pngPath; }
+        public void setPngPath(String pngPath) { this.pngPath = pngPath; }
+        
+        public String getJsonPath() { return jsonPath; }
+        public void setJsonPath(String jsonPath) { this.jsonPath = jsonPath; }
+        
+        public String getPngRelativePath() { return pngRelativePath; }
+        public void setPngRelativePath(String pngRelativePath) { this.pngRelativePath = pngRelativePath; }
+        
+        public String getJsonRelativePath() { return jsonRelativePath; }
+        public void setJsonRelativePath(String jsonRelativePath) { this.jsonRelativePath = jsonRelativePath; }
+        
+        public String getTaskId() { return taskId; }
+        public void setTaskId(String taskId) { this.taskId = taskId; }
+        
+        public Integer getTimer() { return timer; }
+        public void setTimer(Integer timer) { this.timer = timer; }
+        
+        public Integer getDate() { return date; }
+        public void setDate(Integer date) { this.date = date; }
+    }
+    
     /**
      * 将时间戳精度调整为只到秒级，去掉毫秒部分
      * @param timestampMillis 毫秒级时间戳
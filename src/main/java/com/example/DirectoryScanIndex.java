@@ -0,0 +1,157 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 目录扫描索引 记录每个目录的修改时间、子目录以及目录中的nc文件是否都已处理
+ * 目录中增删文件或子目录时目录的修改时间会变化 修改时间没变且已处理完的目录不再列出内容 只检查记录的子目录
+ * 修改时间与列出时间相差不到 RACY_MILLIS 的目录不记为已处理 避免同一时间单位内新增的文件被漏掉
+ * 索引只保存在内存中 重启后第一次扫描列出所有目录
+ */
+public class DirectoryScanIndex {
+
+    private static final long RACY_MILLIS = 2000;
+
+    /**
+     * 已处理完的目录 key 为规范化的绝对路径
+     */
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 查找目录及子目录中需要检查的nc文件 同时按目录判断是否排除入库
+     *
+     * @param skipUnchanged 是否跳过没有变化且已处理完的目录 false 时列出所有目录
+     */
+    public Scan scan(Path folder, ExcludeRules excludeRules, boolean skipUnchanged) throws IOException {
+        Scan scan = new Scan();
+        walk(folder, folder.toAbsolutePath().normalize(), excludeRules.isExcluded(folder), excludeRules, skipUnchanged, scan);
+        return scan;
+    }
+
+    private void walk(Path directory, Path absoluteDirectory, boolean excluded, ExcludeRules excludeRules,
+                      boolean skipUnchanged, Scan scan) throws IOException {
+        long modified = 0;
+        if (skipUnchanged) {
+            try {
+                modified = Files.getLastModifiedTime(directory).toMillis();
+            } catch (NoSuchFileException e) {
+                forget(absoluteDirectory);
+                return;
+            }
+            Entry entry = entries.get(absoluteDirectory);
+            if (entry != null && entry.modified == modified) {
+                // 目录内容没有变化 只检查子目录
+                scan.skippedDirectories++;
+                for (Path child : entry.children) {
+                    Path absoluteChild = absoluteDirectory.resolve(child);
+                    walk(directory.resolve(child), absoluteChild, excludeRules.isExcluded(absoluteChild, excluded),
+                            excludeRules, true, scan);
+                }
+                return;
+            }
+        }
+        long listedAt = System.currentTimeMillis();
+        List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                Path name = entry.getFileName();
+                Path absoluteEntry = absoluteDirectory.resolve(name);
+                if (Files.isDirectory(entry)) {
+                    // 递归查找子目录 排除的目录下的子目录也排除
+                    children.add(name);
+                    walk(entry, absoluteEntry, excludeRules.isExcluded(absoluteEntry, excluded), excludeRules, skipUnchanged, scan);
+                } else if (Files.isRegularFile(entry) && name.toString().toLowerCase().endsWith(".nc")) {
+                    scan.ncFiles.put(entry, excludeRules.isExcluded(absoluteEntry, excluded));
+                }
+            }
+        }
+        if (skipUnchanged) {
+            scan.listed.put(absoluteDirectory, new Entry(modified, listedAt, children));
+        }
+    }
+
+    /**
+     * 本次扫描列出的nc文件都已处理 记录这些目录 下次扫描时没有变化就跳过
+     */
+    public void complete(Scan scan) {
+        for (Map.Entry<Path, Entry> listed : scan.listed.entrySet()) {
+            Path directory = listed.getKey();
+            Entry entry = listed.getValue();
+            Entry previous = entries.remove(directory);
+            if (previous != null) {
+                // 已删除的子目录不再检查
+                for (Path child : previous.children) {
+                    if (!entry.children.contains(child)) {
+                        forget(directory.resolve(child));
+                    }
+                }
+            }
+            if (entry.listedAt - entry.modified > RACY_MILLIS) {
+                entries.put(directory, entry);
+            }
+        }
+    }
+
+    /**
+     * 目录及其子目录下次扫描时重新列出
+     */
+    public void forget(Path absoluteDirectory) {
+        entries.keySet().removeIf(path -> path.startsWith(absoluteDirectory));
+    }
+
+    /**
+     * 所有目录下次扫描时重新列出 排除规则等配置变化后调用
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final long modified;
+        private final long listedAt;
+        private final List<Path> children;
+
+        private Entry(long modified, long listedAt, List<Path> children) {
+            this.modified = modified;
+            this.listedAt = listedAt;
+            this.children = Collections.unmodifiableList(children);
+        }
+    }
+
+    /**
+     * 一次扫描的结果
+     */
+    public static final class Scan {
+        private final Map<Path, Boolean> ncFiles = new LinkedHashMap<>();
+        private final Map<Path, Entry> listed = new LinkedHashMap<>();
+        private int skippedDirectories;
+
+        /**
+         * 需要检查的nc文件 -> 是否排除入库 按遍历顺序
+         */
+        public Map<Path, Boolean> getNcFiles() {
+            return ncFiles;
+        }
+
+        /**
+         * 没有变化、未列出内容的目录数
+         */
+        public int getSkippedDirectories() {
+            return skippedDirectories;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 要素固定色标范围表
+ * 配置格式: 要素名[@层次]=最小值,最大值 例如
+ * t2m=220,320
+ * t@850=230,310
+ * 同一要素所有时次使用相同的色标范围 图片之间可以直接比较
+ */
+@Slf4j
+public class ElementRangeTable {
+
+    public static final ElementRangeTable EMPTY = new ElementRangeTable(Collections.<String, double[]>emptyMap());
+
+    /**
+     * key 为 要素名(小写) 或 要素名(小写)@层次
+     */
+    private final Map<String, double[]> ranges;
+
+    private ElementRangeTable(Map<String, double[]> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * 从配置文件加载 文件不存在时返回空表
+     *
+     * @param filePath 配置文件路径
+     * @return
+     */
+    public static ElementRangeTable load(String filePath) {
+        if (StringUtils.isBlank(filePath)) {
+            return EMPTY;
+        }
+        File file = new File(filePath);
+        if (!file.exists()) {
+            log.info("要素色标范围表不存在:{} 使用数据统计的范围", file.getAbsolutePath());
+            return EMPTY;
+        }
+        Properties props = new Properties();
+        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            props.load(reader);
+        } catch (IOException e) {
+            log.error("读取要素色标范围表失败:{}", e.getMessage());
+            return EMPTY;
+        }
+        Map<String, double[]> ranges = new HashMap<>();
+        for (String key : props.stringPropertyNames()) {
+            double[] range = parseRange(props.getProperty(key));
+            if (range == null) {
+                log.warn("要素色标范围配置不正确 已忽略:{}={}", key, props.getProperty(key));
+                continue;
+            }
+            ranges.put(buildKey(key), range);
+        }
+        log.info("要素色标范围表加载完成:{} 共{}条", file.getAbsolutePath(), ranges.size());
+        return new ElementRangeTable(ranges);
+    }
+
+    /**
+     * 查找色标范围 先按 要素@层次 再按要素
+     *
+     * @param element 要素名
+     * @param level   层次 可以为空
+     * @return [min, max] 未配置时返回 null
+     */
+    public double[] lookup(String element, String level) {
+        if (ranges.isEmpty() || element == null) {
+            return null;
+        }
+        String name = element.trim().toLowerCase();
+        if (level != null) {
+            double[] range = ranges.get(name + "@" + normalizeLevel(level));
+            if (range != null) {
+                return range;
+            }
+        }
+        return ranges.get(name);
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    private static String buildKey(String key) {
+        String trimmed = key.trim().toLowerCase();
+        int at = trimmed.indexOf('@');
+        if (at < 0) {
+            return trimmed;
+        }
+        return trimmed.substring(0, at).trim() + "@" + normalizeLevel(trimmed.substring(at + 1));
+    }
+
+    /**
+     * 层次统一为数值格式 850 与 850.0 视为相同
+     */
+    private static String normalizeLevel(String level) {
+        String trimmed = level.trim();
+        try {
+            return String.valueOf(Double.parseDouble(trimmed));
+        } catch (NumberFormatException e) {
+            return trimmed;
+        }
+    }
+
+    private static double[] parseRange(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            double min = Double.parseDouble(parts[0].trim());
+            double max = Double.parseDouble(parts[1].trim());
+            if (!(max > min)) {
+                return null;
+            }
+            return new double[]{min, max};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
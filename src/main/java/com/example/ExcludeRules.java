@@ -0,0 +1,130 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 排除入库的路径 配置加载时解析一次
+ * 配置格式: 多个条目用逗号分隔 例如 ./exclude,/data/test,/data/input/*_tmp
+ * 普通路径按绝对路径前缀匹配 该目录及其子目录下的文件都排除
+ * 带 glob: 前缀或包含 * ? [ { 的条目为通配符 匹配绝对路径 匹配到目录时整个目录排除
+ * 不以 / 或盘符开头的相对通配符匹配任意目录下的路径 例如 *_tmp.nc 排除所有以 _tmp.nc 结尾的文件
+ * 扫描时每个目录只判断一次 结果传给目录下的文件和子目录
+ */
+@Slf4j
+public class ExcludeRules {
+
+    public static final ExcludeRules NONE = new ExcludeRules(Collections.<Path>emptyList(), Collections.<PathMatcher>emptyList());
+
+    private final List<Path> roots;
+    private final List<PathMatcher> globs;
+
+    private ExcludeRules(List<Path> roots, List<PathMatcher> globs) {
+        this.roots = roots;
+        this.globs = globs;
+    }
+
+    public static ExcludeRules parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NONE;
+        }
+        List<Path> roots = new ArrayList<>();
+        List<PathMatcher> globs = new ArrayList<>();
+        for (String item : value.split(",")) {
+            String entry = item.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            try {
+                if (entry.startsWith("glob:")) {
+                    globs.add(FileSystems.getDefault().getPathMatcher("glob:" + anywhere(entry.substring(5))));
+                } else if (entry.matches(".*[*?\\[{].*")) {
+                    globs.add(FileSystems.getDefault().getPathMatcher("glob:" + anywhere(entry)));
+                } else {
+                    roots.add(Paths.get(entry).toAbsolutePath().normalize());
+                }
+            } catch (InvalidPathException | PatternSyntaxException e) {
+                log.warn("排除路径格式不正确 已忽略: {} {}", entry, e.getMessage());
+            }
+        }
+        if (roots.isEmpty() && globs.isEmpty()) {
+            return NONE;
+        }
+        return new ExcludeRules(Collections.unmodifiableList(roots), Collections.unmodifiableList(globs));
+    }
+
+    /**
+     * 匹配的是绝对路径 相对的通配符前面加上 ** 和路径分隔符 否则永远不会匹配
+     */
+    static String anywhere(String pattern) {
+        if (pattern.startsWith("/") || pattern.startsWith("\\") || pattern.startsWith("**")
+                || pattern.matches("[A-Za-z]:.*")) {
+            return pattern;
+        }
+        return "**/" + (pattern.startsWith("./") ? pattern.substring(2) : pattern);
+    }
+
+    public boolean isEmpty() {
+        return roots.isEmpty() && globs.isEmpty();
+    }
+
+    /**
+     * 路径是否排除 会逐级检查上级目录是否匹配通配符
+     *
+     * @param path 任意路径 内部转为绝对路径
+     */
+    public boolean isExcluded(Path path) {
+        if (isEmpty()) {
+            return false;
+        }
+        Path absolute = path.toAbsolutePath().normalize();
+        if (matches(absolute)) {
+            return true;
+        }
+        if (!globs.isEmpty()) {
+            for (Path parent = absolute.getParent(); parent != null; parent = parent.getParent()) {
+                if (matchesGlob(parent)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 扫描时使用 上级目录已判断过 只检查路径本身
+     *
+     * @param absolute      已规范化的绝对路径
+     * @param parentExcluded 上级目录是否已排除
+     */
+    public boolean isExcluded(Path absolute, boolean parentExcluded) {
+        return parentExcluded || (!isEmpty() && matches(absolute));
+    }
+
+    private boolean matches(Path absolute) {
+        for (Path root : roots) {
+            if (absolute.startsWith(root)) {
+                return true;
+            }
+        }
+        return matchesGlob(absolute);
+    }
+
+    private boolean matchesGlob(Path absolute) {
+        for (PathMatcher glob : globs) {
+            if (glob.matches(absolute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
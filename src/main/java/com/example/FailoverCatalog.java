@@ -0,0 +1,252 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 转换记录 先写入本地记录文件 再由写入线程批量写入数据库(write-behind)
+ * 转换线程不等待数据库 写入线程每攒够 batchSize 条或每隔 flushMillis 写一次 一批一个事务
+ * 未写入数据库的记录超过 queueCapacity 条时转换线程等待写入线程(数据库不可用时不等待 记录留在本地文件中)
+ * 本地记录内存中最多保留 queueCapacity 条未写入的记录 数据库不可用期间其余的从本地文件读回 内存不随断开时间增长
+ * 数据库断开期间按间隔重新连接 连接成功后继续写入 文件转换记录同时保留在本地索引中 数据库断开后仍能判断文件是否已处理
+ */
+@Slf4j
+public class FailoverCatalog implements ConversionCatalog {
+
+    private final DatabaseManager database;
+    private final LocalCatalog local;
+    private final long retryMillis;
+    private final int batchSize;
+    private final long flushMillis;
+    private final int queueCapacity;
+    private final Thread writer;
+    /**
+     * 写入线程和等待的转换线程使用的锁
+     */
+    private final Object signal = new Object();
+    private volatile boolean running = true;
+    private volatile boolean usingLocal;
+    private long lastRetry;
+
+    public FailoverCatalog(DatabaseManager database, LocalCatalog local, ConfigManager configManager) {
+        this.database = database;
+        this.local = local;
+        this.retryMillis = Math.max(1, configManager.getDatabaseRetrySeconds()) * 1000L;
+        this.batchSize = Math.max(1, configManager.getDatabaseBatchSize());
+        this.flushMillis = Math.max(10, configManager.getDatabaseBatchFlushMs());
+        this.queueCapacity = Math.max(batchSize, configManager.getDatabaseQueueCapacity());
+        this.usingLocal = !database.isAvailable();
+        if (usingLocal) {
+            lastRetry = System.currentTimeMillis();
+            log.warn("数据库不可用 使用本地记录: {}", local.getFile().getAbsolutePath());
+        }
+        if (local.hasPending()) {
+            log.info("本地记录中有 {} 条记录未写入数据库", local.getPendingCount());
+        }
+        this.writer = new Thread(this::drain, "catalog-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 是否尝试使用数据库 连接正常时不检查连接(由数据库操作本身检查一次 失败后切换到本地)
+     * 断开期间每隔 retryMillis 重新连接一次
+     */
+    private boolean databaseUsable() {
+        return !usingLocal || databaseReady();
+    }
+
+    /**
+     * 数据库是否可以使用 断开期间每隔 retryMillis 重新连接一次
+     */
+    private synchronized boolean databaseReady() {
+        if (usingLocal) {
+            long now = System.currentTimeMillis();
+            if (now - lastRetry < retryMillis) {
+                return false;
+            }
+            lastRetry = now;
+            if (!database.reconnect()) {
+                log.warn("数据库仍不可用 {} 秒后重试 未同步记录 {} 条", retryMillis / 1000, local.getPendingCount());
+                return false;
+            }
+            log.info("数据库已恢复 未同步记录 {} 条", local.getPendingCount());
+            usingLocal = false;
+        } else if (!database.isAvailable()) {
+            switchToLocal();
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void switchToLocal() {
+        if (!usingLocal) {
+            usingLocal = true;
+            lastRetry = System.currentTimeMillis();
+            log.warn("数据库不可用 切换到本地记录: {}", local.getFile().getAbsolutePath());
+        }
+    }
+
+    /**
+     * 写入线程 攒够一批或超过时间窗口后写入数据库
+     */
+    private void drain() {
+        while (running) {
+            try {
+                synchronized (signal) {
+                    if (running && local.getPendingCount() < batchSize) {
+                        signal.wait(flushMillis);
+                    }
+                }
+                flush();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("写入数据库线程异常: {}", e.getMessage(), e);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * 把未同步的记录按批写入数据库 直到写完或数据库不可用
+     */
+    private void flush() {
+        while (local.hasPending() && databaseUsable()) {
+            boolean synced = local.syncTo(database, batchSize);
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+            if (!synced) {
+                if (!database.isAvailable()) {
+                    switchToLocal();
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 追加记录后 攒够一批时唤醒写入线程 未写入的记录过多时等待
+     */
+    private void afterAppend() {
+        int count = local.getPendingCount();
+        if (count < batchSize || usingLocal) {
+            return;
+        }
+        synchronized (signal) {
+            signal.notifyAll();
+            try {
+                while (running && !usingLocal && local.getPendingCount() >= queueCapacity) {
+                    signal.wait(flushMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isFolderProcessed(String folderName) {
+        if (local.isFolderPending(folderName)) {
+            return true;
+        }
+        if (databaseUsable()) {
+            Boolean processed = database.findFolderProcessed(folderName);
+            if (processed != null) {
+                return processed;
+            }
+            if (!database.isAvailable()) {
+                switchToLocal();
+            }
+        }
+        return local.isFolderProcessed(folderName);
+    }
+
+    @Override
+    public boolean isFileProcessed(String folderName, String fileName) {
+        // 还没写入数据库的记录以本地为准
+        if (local.isFilePending(folderName, fileName)) {
+            return true;
+        }
+        if (databaseUsable()) {
+            Boolean processed = database.findFileProcessed(folderName, fileName);
+            if (processed != null) {
+                return processed;
+            }
+            if (!database.isAvailable()) {
+                switchToLocal();
+            }
+        }
+        return local.isFileProcessed(folderName, fileName);
+    }
+
+    @Override
+    public boolean recordFileConversion(String folderName, String fileName, String filePath,
+                                        String outputPath, long fileSize, String status) {
+        if (!local.recordFileConversion(folderName, fileName, filePath, outputPath, fileSize, status)) {
+            // 本地文件无法写入时直接写数据库
+            return databaseReady() && database.recordFileConversion(folderName, fileName, filePath, outputPath, fileSize, status);
+        }
+        afterAppend();
+        return true;
+    }
+
+    @Override
+    public Long insertDataPngRecord(String eleName, Long dataTime, Integer level, String fileName,
+                                    String filePath, String pngPath, String jsonPath,
+                                    String pngRelativePath, String jsonRelativePath,
+                                    String taskId, Integer timer, Integer date) {
+        Long id = local.insertDataPngRecord(eleName, dataTime, level, fileName, filePath, pngPath, jsonPath,
+                pngRelativePath, jsonRelativePath, taskId, timer, date);
+        if (id == null) {
+            // 本地文件无法写入时直接写数据库
+            return databaseReady() ? database.insertDataPngRecord(eleName, dataTime, level, fileName, filePath, pngPath, jsonPath,
+                    pngRelativePath, jsonRelativePath, taskId, timer, date) : null;
+        }
+        afterAppend();
+        return id;
+    }
+
+    @Override
+    public int insertDataPngRecords(List<DatabaseManager.DataPngRecord> records) {
+        int written = local.insertDataPngRecords(records);
+        if (written > 0) {
+            afterAppend();
+        }
+        if (written < records.size() && databaseReady()) {
+            // 本地文件无法写入时剩余的直接写数据库
+            written += database.insertDataPngRecords(records.subList(written, records.size()));
+        }
+        return written;
+    }
+
+    /**
+     * 所有记录都已写入数据库
+     */
+    public boolean isSynced() {
+        return !usingLocal && !local.hasPending();
+    }
+
+    /**
+     * 停止写入线程 数据库可用时先写完未同步的记录 其余的留在本地文件中 下次启动时写入
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (local.hasPending()) {
+            log.warn("本地记录中有 {} 条记录未写入数据库 下次启动时写入: {}", local.getPendingCount(), local.getFile().getAbsolutePath());
+        }
+        database.close();
+        local.close();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example;
+
+/**
+ * 文件名元数据 从nc文件名中解析出的要素名、日期和时次
+ * 每个文件只解析一次 由 FileNameMetadataParser 缓存 出图和写库共用 不可修改
+ */
+public class FileNameMetadata {
+
+    private final String fileName;
+    /**
+     * 要素名 无法解析时为 null
+     */
+    private final String elementName;
+    /**
+     * 日期 YYYYMMDD 无法解析时为 null
+     */
+    private final String date;
+    /**
+     * 时次 两位数字 00-23 无法解析时为 null
+     */
+    private final String hour;
+    /**
+     * 层次 只有文件名规则中配置了 level 分组时才有值
+     */
+    private final String level;
+    /**
+     * 匹配的文件名规则(数据源名称) 使用默认解析时为 null
+     */
+    private final String source;
+
+    FileNameMetadata(String fileName, String elementName, String date, String hour, String level, String source) {
+        this.fileName = fileName;
+        this.elementName = elementName;
+        this.date = date;
+        this.hour = hour;
+        this.level = level;
+        this.source = source;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getElementName() {
+        return elementName;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getHour() {
+        return hour;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "FileNameMetadata{" +
+                "fileName='" + fileName + '\'' +
+                ", elementName='" + elementName + '\'' +
+                ", date='" + date + '\'' +
+                ", hour='" + hour + '\'' +
+                ", level='" + level + '\'' +
+                ", source='" + source + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,452 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文件名元数据解析
+ * 从nc文件名中解析要素名、日期和时次 正则在类加载时编译一次
+ * 先按文件名规则表(FileNameRules)匹配 规则中没有的字段再使用默认解析
+ * 解析结果按文件名缓存 同一个文件的所有切片(出图时间、写库记录)共用一次解析结果
+ */
+@Slf4j
+public class FileNameMetadataParser {
+
+    /**
+     * 最多缓存的文件名数
+     */
+    public static final int MAX_ENTRIES = 4096;
+
+    private static final Pattern DATE_8 = Pattern.compile("(\\d{8})");
+    private static final Pattern DATE_6 = Pattern.compile("(\\d{6})");
+    private static final Pattern DATE_SEPARATED = Pattern.compile("(\\d{4})[\\-/](\\d{2})[\\-/](\\d{2})");
+    private static final Pattern DATE_FLEXIBLE = Pattern.compile("(\\d{4})(\\d{1,2})(\\d{1,2})");
+    /**
+     * YYYYMMDDHH[mm] 紧凑格式
+     */
+    private static final Pattern DATE_HOUR_COMPACT = Pattern.compile("(?<!\\d)(\\d{8})(\\d{2})(\\d{0,2})(?!\\d)");
+    /**
+     * 最后一组以分隔符开头的两位数字 例如 _06
+     */
+    private static final Pattern HOUR_SUFFIX = Pattern.compile("(?:_|-)(\\d{2})(?!.*\\d)");
+    private static final Pattern REMOVE_DATE_8 = Pattern.compile("\\d{8}");
+    private static final Pattern REMOVE_DATE_6 = Pattern.compile("\\d{6}");
+    private static final Pattern REMOVE_DATE_SEPARATED = Pattern.compile("\\d{4}[\\-/]\\d{2}[\\-/]\\d{2}");
+    private static final Pattern REPEATED_SEPARATOR = Pattern.compile("[_\\-]{2,}");
+    private static final Pattern EDGE_SEPARATOR = Pattern.compile("^[_\\-]+|[_\\-]+$");
+    private static final Pattern DATE_LIKE = Pattern.compile("\\d{4,8}|\\d{4}[\\-/]\\d{2}[\\-/]\\d{2}");
+    private static final Pattern NUMERIC = Pattern.compile("\\d+");
+    private static final Pattern HOUR = Pattern.compile("\\d{2}");
+    /**
+     * 不是要素名的常见片段
+     */
+    private static final Pattern NON_ELEMENT_PART = Pattern.compile(".*(era5|ecmwf|gfs|data|file|nc).*");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[_\\-.]+");
+    /**
+     * 不超过该长度的常见要素名(t、p、rh 等)只按完整片段匹配 避免匹配到其他单词中的字母
+     */
+    private static final int SHORT_ELEMENT_LENGTH = 2;
+
+    private static final String[] COMMON_ELEMENTS = {
+            "temperature", "temp", "t2m", "t",
+            "humidity", "rh", "hum", "h",
+            "pressure", "pres", "p", "slp", "msl",
+            "wind", "u10", "v10", "ws", "wd",
+            "precipitation", "prec", "rain", "pr",
+            "lcc", "mcc", "hcc", "tcc", // 云量
+            "vis", "visibility", // 能见度
+            "sst", "sea_surface_temperature", // 海温
+            "wh", "wave_height", // 浪高
+            "cape", "cin", // 对流参数
+            "geopotential", "z", "gh" // 位势高度
+    };
+
+    private static final Map<String, FileNameMetadata> CACHE = new LinkedHashMap<String, FileNameMetadata>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileNameMetadata> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static volatile FileNameRules rules = FileNameRules.EMPTY;
+
+    private FileNameMetadataParser() {
+    }
+
+    /**
+     * 设置文件名规则表 同时清除已缓存的解析结果
+     *
+     * @param fileNameRules 规则表 null 表示不使用规则
+     */
+    public static void setRules(FileNameRules fileNameRules) {
+        rules = fileNameRules != null ? fileNameRules : FileNameRules.EMPTY;
+        clear();
+    }
+
+    public static FileNameRules getRules() {
+        return rules;
+    }
+
+    /**
+     * 解析文件名 结果按文件名缓存
+     *
+     * @param fileName 文件名 可以带路径
+     * @return 元数据 不为 null
+     */
+    public static FileNameMetadata parse(String fileName) {
+        String name = getFileName(fileName);
+        if (name == null) {
+            return new FileNameMetadata(null, null, null, null, null, null);
+        }
+        synchronized (CACHE) {
+            FileNameMetadata metadata = CACHE.get(name);
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+        FileNameMetadata metadata = doParse(name);
+        synchronized (CACHE) {
+            CACHE.put(name, metadata);
+        }
+        return metadata;
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static FileNameMetadata doParse(String fileName) {
+        String nameWithoutExtension = removeExtension(fileName);
+        // 第一条匹配的规则生效 规则没有给出的字段继续使用默认解析
+        FileNameRules.Match match = rules.match(nameWithoutExtension);
+        String date = match != null ? match.getDate() : null;
+        String hour = match != null ? match.getHour() : null;
+        if (date == null) {
+            Matcher compactMatcher = DATE_HOUR_COMPACT.matcher(nameWithoutExtension);
+            if (compactMatcher.find()) {
+                String datePart = compactMatcher.group(1);
+                String hourPart = compactMatcher.group(2);
+                if (isValidDateString(datePart)) {
+                    date = datePart;
+                    if (hour == null && isValidHourString(hourPart)) {
+                        hour = hourPart;
+                    }
+                }
+            }
+        }
+
+        if (date == null) {
+            date = extractDate(fileName, nameWithoutExtension);
+        }
+
+        if (hour == null) {
+            Matcher hourMatcher = HOUR_SUFFIX.matcher(nameWithoutExtension);
+            if (hourMatcher.find()) {
+                String hourCandidate = hourMatcher.group(1);
+                if (isValidHourString(hourCandidate)) {
+                    hour = hourCandidate;
+                }
+            }
+        }
+
+        String elementName = match != null && match.getElement() != null ? match.getElement() : extractElementName(fileName, nameWithoutExtension);
+        return new FileNameMetadata(fileName, elementName, normalize(date), normalize(hour),
+                match != null ? match.getLevel() : null, match != null ? match.getSource() : null);
+    }
+
+    /**
+     * 从文件名中提取要素名
+     * 支持多种不规范的文件命名格式，使用多种策略进行要素名提取
+     */
+    private static String extractElementName(String fileName, String nameWithoutExtension) {
+        try {
+            // 移除日期部分，以便更好地提取要素名
+            String nameWithoutDate = removeDate(nameWithoutExtension);
+
+            // 策略1：尝试传统的ERA5格式（ERA5_ELEMENT_DATE）
+            if (nameWithoutExtension.startsWith("ERA5_") && nameWithoutExtension.contains("_")) {
+                String[] parts = nameWithoutExtension.split("_");
+                if (parts.length >= 2) {
+                    // 跳过ERA5和日期部分，取中间的要素名
+                    for (int i = 1; i < parts.length; i++) {
+                        if (!isDateLike(parts[i]) && !parts[i].isEmpty()) {
+                            String elementName = parts[i].toLowerCase();
+                            log.debug("要素名提取（策略1-ERA5格式）: {} 从 {}", elementName, fileName);
+                            return elementName;
+                        }
+                    }
+                }
+            }
+
+            // 策略2：使用常见的气象要素名匹配
+            String lowerFileName = nameWithoutDate.toLowerCase();
+            List<String> tokens = Arrays.asList(TOKEN_SEPARATOR.split(lowerFileName));
+            for (String element : COMMON_ELEMENTS) {
+                boolean found = element.length() <= SHORT_ELEMENT_LENGTH ? tokens.contains(element) : lowerFileName.contains(element);
+                if (found) {
+                    log.debug("要素名提取（策略2-常见匹配）: {} 从 {}", element, fileName);
+                    return element;
+                }
+            }
+
+            // 策略3：使用下划线分隔，取非日期的部分
+            String elementName = firstElementPart(nameWithoutDate, "_");
+            if (elementName != null) {
+                log.debug("要素名提取（策略3-分隔符）: {} 从 {}", elementName, fileName);
+                return elementName;
+            }
+
+            // 策略4：使用中划线分隔
+            elementName = firstElementPart(nameWithoutDate, "-");
+            if (elementName != null) {
+                log.debug("要素名提取（策略4-中划线）: {} 从 {}", elementName, fileName);
+                return elementName;
+            }
+
+            // 策略5：如果所有策略都失败，尝试使用整个文件名（去掉日期后）作为要素名
+            if (nameWithoutDate.length() > 0 && nameWithoutDate.length() <= 20) {
+                elementName = nameWithoutDate.toLowerCase();
+                log.debug("要素名提取（策略5-整个名称）: {} 从 {}", elementName, fileName);
+                return elementName;
+            }
+
+            log.warn("无法从文件名提取要素名: {}", fileName);
+            return null;
+
+        } catch (Exception e) {
+            log.error("从文件名提取要素名失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String firstElementPart(String nameWithoutDate, String separator) {
+        if (!nameWithoutDate.contains(separator)) {
+            return null;
+        }
+        for (String part : nameWithoutDate.split(separator)) {
+            if (!part.isEmpty() && !isDateLike(part) && !isNumeric(part)) {
+                // 过滤掉一些常见的非要素名部分
+                String lowerPart = part.toLowerCase();
+                if (!NON_ELEMENT_PART.matcher(lowerPart).matches()) {
+                    return lowerPart;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从文件名中提取日期
+     * 支持多种不规范的文件命名格式，使用多种策略进行日期提取
+     */
+    private static String extractDate(String fileName, String nameWithoutExtension) {
+        try {
+            // 策略1：查找8位数字的日期格式（YYYYMMDD）
+            Matcher matcher8 = DATE_8.matcher(nameWithoutExtension);
+            while (matcher8.find()) {
+                String dateStr = matcher8.group(1);
+                if (isValidDateString(dateStr)) {
+                    log.debug("日期提取（策略1-8位）: {} 从 {}", dateStr, fileName);
+                    return dateStr;
+                }
+            }
+
+            // 策略2：查找6位数字的日期格式（YYMMDD），转换为8位
+            Matcher matcher6 = DATE_6.matcher(nameWithoutExtension);
+            while (matcher6.find()) {
+                String dateStr8 = convertSixDigitToEightDigit(matcher6.group(1));
+                if (dateStr8 != null && isValidDateString(dateStr8)) {
+                    log.debug("日期提取（策略2-6位转8位）: {} 从 {}", dateStr8, fileName);
+                    return dateStr8;
+                }
+            }
+
+            // 策略3：查找YYYY-MM-DD或YYYY/MM/DD格式
+            Matcher matcherSep = DATE_SEPARATED.matcher(nameWithoutExtension);
+            if (matcherSep.find()) {
+                String dateStr = matcherSep.group(1) + matcherSep.group(2) + matcherSep.group(3);
+                if (isValidDateString(dateStr)) {
+                    log.debug("日期提取（策略3-分隔符）: {} 从 {}", dateStr, fileName);
+                    return dateStr;
+                }
+            }
+
+            // 策略4：查找YYYYMMDD或YYYYMMD或YYYMMDD等不规范格式
+            Matcher flexMatcher = DATE_FLEXIBLE.matcher(nameWithoutExtension);
+            while (flexMatcher.find()) {
+                String month = String.format("%02d", Integer.parseInt(flexMatcher.group(2)));
+                String day = String.format("%02d", Integer.parseInt(flexMatcher.group(3)));
+                String dateStr = flexMatcher.group(1) + month + day;
+                if (isValidDateString(dateStr)) {
+                    log.debug("日期提取（策略4-灵活匹配）: {} 从 {}", dateStr, fileName);
+                    return dateStr;
+                }
+            }
+
+            log.warn("无法从文件名提取日期: {}", fileName);
+            return null;
+
+        } catch (Exception e) {
+            log.error("从文件名提取日期失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 在完整路径(包括目录名)中查找第一个合理的8位日期
+     *
+     * @param path 路径
+     * @return YYYYMMDD 找不到时返回 null
+     */
+    public static String findDateInPath(String path) {
+        if (path == null) {
+            return null;
+        }
+        Matcher matcher = DATE_8.matcher(path);
+        while (matcher.find()) {
+            String candidate = matcher.group(1);
+            if (isValidDateString(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从文件名中移除日期部分
+     */
+    public static String removeDate(String fileName) {
+        if (fileName == null || fileName.trim().isEmpty()) {
+            return fileName;
+        }
+        String result = fileName;
+        // 移除8位数字日期
+        result = REMOVE_DATE_8.matcher(result).replaceAll("");
+        // 移除6位数字日期
+        result = REMOVE_DATE_6.matcher(result).replaceAll("");
+        // 移除YYYY-MM-DD或YYYY/MM/DD格式的日期
+        result = REMOVE_DATE_SEPARATED.matcher(result).replaceAll("");
+        // 清理多余的分隔符
+        result = REPEATED_SEPARATOR.matcher(result).replaceAll("_");
+        result = EDGE_SEPARATOR.matcher(result).replaceAll("");
+        return result;
+    }
+
+    /**
+     * 移除 .nc 后缀
+     */
+    public static String removeExtension(String fileName) {
+        if (fileName != null && fileName.toLowerCase().endsWith(".nc")) {
+            return fileName.substring(0, fileName.length() - 3);
+        }
+        return fileName;
+    }
+
+    /**
+     * 验证日期字符串是否合理
+     *
+     * @param dateStr YYYYMMDD格式的日期字符串
+     * @return 是否合理
+     */
+    public static boolean isValidDateString(String dateStr) {
+        if (dateStr == null || dateStr.length() != 8) {
+            return false;
+        }
+        try {
+            int year = Integer.parseInt(dateStr.substring(0, 4));
+            int month = Integer.parseInt(dateStr.substring(4, 6));
+            int day = Integer.parseInt(dateStr.substring(6, 8));
+
+            // 基本验证规则
+            if (year < 1900 || year > 2100) {
+                return false;
+            }
+            if (month < 1 || month > 12) {
+                return false;
+            }
+            if (day < 1 || day > 31) {
+                return false;
+            }
+            // 简单的月份天数验证
+            if (month == 2 && day > 29) {
+                return false;
+            }
+            return !((month == 4 || month == 6 || month == 9 || month == 11) && day > 30);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    static boolean isValidHourString(String hour) {
+        if (hour == null || hour.length() != 2 || !HOUR.matcher(hour).matches()) {
+            return false;
+        }
+        int hourValue = Integer.parseInt(hour);
+        return hourValue >= 0 && hourValue <= 23;
+    }
+
+    /**
+     * 判断字符串是否像日期
+     */
+    static boolean isDateLike(String str) {
+        if (str == null || str.trim().isEmpty()) {
+            return false;
+        }
+        // 4-8位数字 或 YYYY-MM-DD
+        return DATE_LIKE.matcher(str).matches();
+    }
+
+    /**
+     * 判断字符串是否为纯数字
+     */
+    static boolean isNumeric(String str) {
+        if (str == null || str.trim().isEmpty()) {
+            return false;
+        }
+        return NUMERIC.matcher(str).matches();
+    }
+
+    /**
+     * 将6位数字日期转换为8位数字日期
+     *
+     * @param sixDigitDate YYMMDD格式的日期
+     * @return YYYYMMDD格式的日期，如果无法转换则返回null
+     */
+    private static String convertSixDigitToEightDigit(String sixDigitDate) {
+        if (sixDigitDate == null || sixDigitDate.length() != 6) {
+            return null;
+        }
+        try {
+            int year2 = Integer.parseInt(sixDigitDate.substring(0, 2));
+            // 如果年份大于50，则认为是19XX，否则认为是20XX
+            int year4 = year2 > 50 ? 1900 + year2 : 2000 + year2;
+            return year4 + sixDigitDate.substring(2);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String getFileName(String filePath) {
+        if (filePath == null || filePath.trim().isEmpty()) {
+            return null;
+        }
+        int lastSlash = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
+        return lastSlash >= 0 ? filePath.substring(lastSlash + 1) : filePath;
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
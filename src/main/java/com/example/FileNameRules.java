@@ -0,0 +1,210 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 文件名规则表 按数据源配置文件命名规则 新增数据源只需要修改规则文件
+ * 配置格式: 每行一条 数据源名称=正则 例如
+ * era5=^ERA5_(?<element>[A-Za-z0-9]+)_(?<date>\d{8})(?<hour>\d{2})?$
+ * 正则使用命名分组 element(要素名) date(日期 YYYYMMDD 或 YYYY-MM-DD) hour(时次) level(层次) 至少包含一个
+ * 规则在启动时编译一次 按文件中的顺序匹配去掉 .nc 后缀的文件名(不区分大小写) 第一条匹配的规则生效
+ * 规则中没有的分组 以及所有规则都不匹配时 使用 FileNameMetadataParser 的默认解析
+ */
+@Slf4j
+public class FileNameRules {
+
+    public static final FileNameRules EMPTY = new FileNameRules(Collections.<Rule>emptyList());
+
+    private static final String[] GROUPS = {"element", "date", "hour", "level"};
+
+    private final List<Rule> rules;
+
+    private FileNameRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * 从规则文件加载 文件不存在时返回空表
+     *
+     * @param filePath 规则文件路径
+     * @return
+     */
+    public static FileNameRules load(String filePath) {
+        if (StringUtils.isBlank(filePath)) {
+            return EMPTY;
+        }
+        File file = new File(filePath);
+        if (!file.exists()) {
+            log.info("文件名规则表不存在:{} 使用默认解析", file.getAbsolutePath());
+            return EMPTY;
+        }
+        List<Rule> rules = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                Rule rule = parseRule(line, lineNumber);
+                if (rule != null) {
+                    rules.add(rule);
+                }
+            }
+        } catch (IOException e) {
+            log.error("读取文件名规则表失败:{}", e.getMessage());
+            return EMPTY;
+        }
+        log.info("文件名规则表加载完成:{} 共{}条", file.getAbsolutePath(), rules.size());
+        return new FileNameRules(Collections.unmodifiableList(rules));
+    }
+
+    /**
+     * 按顺序匹配 返回第一条匹配的结果
+     *
+     * @param nameWithoutExtension 去掉 .nc 后缀的文件名
+     * @return 匹配结果 没有规则匹配时返回 null
+     */
+    public Match match(String nameWithoutExtension) {
+        if (nameWithoutExtension == null) {
+            return null;
+        }
+        for (Rule rule : rules) {
+            Matcher matcher = rule.pattern.matcher(nameWithoutExtension);
+            if (!matcher.find()) {
+                continue;
+            }
+            String rawDate = rule.hasGroup[1] ? matcher.group("date") : null;
+            String date = normalizeDate(rawDate);
+            if (rawDate != null && date == null) {
+                // 日期不合理 视为不匹配 继续尝试下一条规则
+                continue;
+            }
+            String hour = rule.hasGroup[2] ? matcher.group("hour") : null;
+            if (hour != null && !FileNameMetadataParser.isValidHourString(hour)) {
+                continue;
+            }
+            String element = rule.hasGroup[0] ? StringUtils.trimToNull(matcher.group("element")) : null;
+            String level = rule.hasGroup[3] ? StringUtils.trimToNull(matcher.group("level")) : null;
+            return new Match(rule.source, element != null ? element.toLowerCase() : null, date, hour, level);
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    private static Rule parseRule(String line, int lineNumber) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        int separator = trimmed.indexOf('=');
+        if (separator <= 0 || separator == trimmed.length() - 1) {
+            log.warn("文件名规则格式不正确 已忽略 第{}行:{}", lineNumber, line);
+            return null;
+        }
+        String source = trimmed.substring(0, separator).trim();
+        String regex = trimmed.substring(separator + 1).trim();
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException e) {
+            log.warn("文件名规则正则不正确 已忽略 第{}行:{}===>{}", lineNumber, line, e.getDescription());
+            return null;
+        }
+        boolean[] hasGroup = new boolean[GROUPS.length];
+        boolean any = false;
+        for (int i = 0; i < GROUPS.length; i++) {
+            hasGroup[i] = regex.contains("(?<" + GROUPS[i] + ">");
+            any |= hasGroup[i];
+        }
+        if (!any) {
+            log.warn("文件名规则没有命名分组 已忽略 第{}行:{}", lineNumber, line);
+            return null;
+        }
+        return new Rule(source, pattern, hasGroup);
+    }
+
+    /**
+     * 日期统一为 YYYYMMDD 不合理时返回 null
+     */
+    private static String normalizeDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        String digits = StringUtils.remove(StringUtils.remove(date, '-'), '/');
+        return FileNameMetadataParser.isValidDateString(digits) ? digits : null;
+    }
+
+    private static final class Rule {
+        private final String source;
+        private final Pattern pattern;
+        /**
+         * 是否包含 element date hour level 分组
+         */
+        private final boolean[] hasGroup;
+
+        private Rule(String source, Pattern pattern, boolean[] hasGroup) {
+            this.source = source;
+            this.pattern = pattern;
+            this.hasGroup = hasGroup;
+        }
+    }
+
+    /**
+     * 规则匹配结果 规则中没有的分组为 null
+     */
+    public static final class Match {
+        private final String source;
+        private final String element;
+        private final String date;
+        private final String hour;
+        private final String level;
+
+        private Match(String source, String element, String date, String hour, String level) {
+            this.source = source;
+            this.element = element;
+            this.date = date;
+            this.hour = hour;
+            this.level = level;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getElement() {
+            return element;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public String getHour() {
+            return hour;
+        }
+
+        public String getLevel() {
+            return level;
+        }
+    }
+}
@@ -0,0 +1,750 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 本地转换记录 - 数据库写入前的缓冲 数据库不可用时代替数据库
+ * 追加写入的文本文件 每行一条记录 字段用制表符分隔 启动时读入内存索引
+ * <pre>
+ * C 文件夹 文件名 文件路径 输出路径 文件大小 状态 已同步(0/1)   文件转换记录
+ * P 雪花ID 要素 时间 层次 文件名 文件路径 png路径 json路径 png相对路径 json相对路径 任务ID 时次 日期   未同步的图片记录
+ * S 条数   最早的若干条未同步记录已写入数据库
+ * </pre>
+ * 记录写入文件后才返回 进程崩溃后未同步的记录在下次启动时继续写入数据库
+ * 文件转换记录写入后、每批写入数据库前把文件刷到磁盘(fsync) 图片记录在所属文件的转换记录之前写入 一起落盘
+ * 文件中无效的行较多时重写文件 只保留已同步的文件转换记录(用于判断是否已处理)和未同步的记录
+ * 内存中最多保留 maxInMemory 条未同步记录 数据库长时间不可用时其余的只记录在文件中的位置 前面的写入数据库后再从文件读取
+ */
+@Slf4j
+public class LocalCatalog implements ConversionCatalog {
+
+    private static final String CONVERSION = "C";
+    private static final String PNG = "P";
+    private static final String SYNCED = "S";
+    private static final String NULL = "\\N";
+
+    private final File file;
+    private final SnowflakeIdGenerator idGenerator;
+    private final Set<String> folders = new HashSet<>();
+    private final Set<String> conversions = new HashSet<>();
+    private final int maxInMemory;
+    /**
+     * 内存中的未同步记录 为全部未同步记录中最早的部分
+     */
+    private final ArrayDeque<PendingRecord> pending = new ArrayDeque<>();
+    /**
+     * 全部未同步记录的条数 包括只在文件中的
+     */
+    private int pendingCount;
+    /**
+     * 第一条不在内存中的未同步记录在文件中的位置 -1 表示全部在内存中
+     * 之后追加的未同步记录都只写入文件
+     */
+    private long spillOffset = -1;
+    /**
+     * 未同步的文件转换记录 文件 -> 条数
+     */
+    private final Map<String, Integer> pendingConversions = new HashMap<>();
+    /**
+     * 未同步的文件转换记录 文件夹 -> 条数
+     */
+    private final Map<String, Integer> pendingFolders = new HashMap<>();
+    private Writer writer;
+    private FileOutputStream output;
+    /**
+     * 有已写入但还没有刷到磁盘的记录
+     */
+    private boolean unforced;
+    private int lines;
+
+    /**
+     * @param path        本地记录文件
+     * @param idGenerator 图片记录的ID
+     * @param maxInMemory 内存中最多保留的未同步记录条数
+     */
+    public LocalCatalog(String path, SnowflakeIdGenerator idGenerator, int maxInMemory) {
+        this.file = new File(path);
+        this.idGenerator = idGenerator;
+        this.maxInMemory = Math.max(1, maxInMemory);
+        load();
+        compactIfNeeded();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 是否有未同步到数据库的记录
+     */
+    public synchronized boolean hasPending() {
+        return pendingCount > 0;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Override
+    public synchronized boolean isFolderProcessed(String folderName) {
+        return folders.contains(folderName);
+    }
+
+    @Override
+    public synchronized boolean isFileProcessed(String folderName, String fileName) {
+        return conversions.contains(key(folderName, fileName));
+    }
+
+    /**
+     * 文件夹中是否有还没有写入数据库的文件转换记录
+     */
+    public synchronized boolean isFolderPending(String folderName) {
+        return pendingFolders.containsKey(folderName);
+    }
+
+    /**
+     * 文件转换记录是否还没有写入数据库
+     */
+    public synchronized boolean isFilePending(String folderName, String fileName) {
+        return pendingConversions.containsKey(key(folderName, fileName));
+    }
+
+    @Override
+    public synchronized boolean recordFileConversion(String folderName, String fileName, String filePath,
+                                                     String outputPath, long fileSize, String status) {
+        String[] fields = {CONVERSION, folderName, fileName, filePath, outputPath, String.valueOf(fileSize), status, "0"};
+        long offset = append(fields);
+        if (offset < 0) {
+            return false;
+        }
+        folders.add(folderName);
+        conversions.add(key(folderName, fileName));
+        addPending(new PendingRecord(fields), offset);
+        // 文件转换记录返回后文件不会再转换 先落盘
+        return force();
+    }
+
+    @Override
+    public synchronized Long insertDataPngRecord(String eleName, Long dataTime, Integer level, String fileName,
+                                                 String filePath, String pngPath, String jsonPath,
+                                                 String pngRelativePath, String jsonRelativePath,
+                                                 String taskId, Integer timer, Integer date) {
+        long id = idGenerator.nextId();
+        String[] fields = {PNG, String.valueOf(id), eleName, toText(dataTime), toText(level), fileName, filePath,
+                pngPath, jsonPath, pngRelativePath, jsonRelativePath, taskId, toText(timer), toText(date)};
+        long offset = append(fields);
+        if (offset < 0) {
+            return null;
+        }
+        addPending(new PendingRecord(fields), offset);
+        return id;
+    }
+
+    @Override
+    public synchronized int insertDataPngRecords(List<DatabaseManager.DataPngRecord> records) {
+        DatabaseManager.assignIds(records, idGenerator);
+        int written = 0;
+        for (DatabaseManager.DataPngRecord record : records) {
+            String[] fields = {PNG, String.valueOf(record.getId()), record.getEleName(), toText(record.getDataTime()),
+                    toText(record.getLevel()), record.getFileName(), record.getFilePath(), record.getPngPath(),
+                    record.getJsonPath(), record.getPngRelativePath(), record.getJsonRelativePath(), record.getTaskId(),
+                    toText(record.getTimer()), toText(record.getDate())};
+            long offset = append(fields);
+            if (offset < 0) {
+                break;
+            }
+            addPending(new PendingRecord(fields), offset);
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * 把最早的 max 条未同步记录在一个事务中写入数据库
+     * 批量写入失败时逐条写入 数据库执行失败但连接正常的记录(例如数据错误)丢弃 避免一直阻塞后面的记录
+     * 只应由一个线程调用 写入数据库时不持有锁 其他线程可以继续追加记录
+     *
+     * @return 这一批是否全部写入
+     */
+    public boolean syncTo(DatabaseManager database, int max) {
+        List<PendingRecord> batch = new ArrayList<>();
+        synchronized (this) {
+            if (pending.isEmpty() && spillOffset >= 0) {
+                readSpilled();
+            }
+            Iterator<PendingRecord> iterator = pending.iterator();
+            while (iterator.hasNext() && batch.size() < max) {
+                batch.add(iterator.next());
+            }
+            // 写入数据库前这一批记录必须已经落盘 否则崩溃后本地文件比数据库少
+            if (!batch.isEmpty() && !force()) {
+                return false;
+            }
+        }
+        if (batch.isEmpty()) {
+            return !hasPending();
+        }
+        List<DatabaseManager.FileConversionRecord> conversionRecords = new ArrayList<>();
+        List<DatabaseManager.DataPngRecord> pngRecords = new ArrayList<>();
+        try {
+            for (PendingRecord record : batch) {
+                record.addTo(conversionRecords, pngRecords);
+            }
+            long start = PipelineMetrics.start();
+            boolean written = database.writeBatch(conversionRecords, pngRecords);
+            PipelineMetrics.record(PipelineMetrics.Stage.DB, null, null, start);
+            if (written) {
+                markSynced(batch.size());
+                return true;
+            }
+        } catch (NumberFormatException e) {
+            log.error("本地记录格式错误: {}", e.getMessage());
+        }
+        int synced = 0;
+        int dropped = 0;
+        for (PendingRecord record : batch) {
+            long start = PipelineMetrics.start();
+            boolean written = record.writeTo(database);
+            PipelineMetrics.record(PipelineMetrics.Stage.DB, null, null, start);
+            if (!written) {
+                if (!database.isAvailable()) {
+                    break;
+                }
+                log.error("本地记录无法写入数据库 已丢弃: {}", String.join(" ", record.fields));
+                dropped++;
+            }
+            synced++;
+        }
+        if (synced > 0) {
+            markSynced(synced);
+        }
+        if (dropped > 0) {
+            log.warn("本地记录逐条写入数据库: {}/{} 条 丢弃 {} 条", synced - dropped, batch.size(), dropped);
+        }
+        return synced == batch.size();
+    }
+
+    /**
+     * 最早的 count 条未同步记录已写入数据库 这些记录都在内存中
+     */
+    private synchronized void markSynced(int count) {
+        if (append(new String[]{SYNCED, String.valueOf(count)}) < 0) {
+            // 标记写入失败时重启后会再写一次 图片记录按ID跳过 文件转换记录覆盖
+            log.warn("写入同步标记失败 重启后将重复同步 {} 条记录", count);
+        }
+        for (int i = 0; i < count; i++) {
+            removePending();
+        }
+        if (pending.isEmpty() && spillOffset >= 0) {
+            readSpilled();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * 新的未同步记录 内存已满或已经有只在文件中的记录时只记录位置
+     *
+     * @param offset 记录在文件中的位置
+     */
+    private void addPending(PendingRecord record, long offset) {
+        pendingCount++;
+        if (CONVERSION.equals(record.fields[0])) {
+            pendingConversions.merge(key(record.fields[1], record.fields[2]), 1, Integer::sum);
+            pendingFolders.merge(record.fields[1], 1, Integer::sum);
+        }
+        if (spillOffset < 0 && pending.size() < maxInMemory) {
+            pending.addLast(record);
+        } else if (spillOffset < 0) {
+            spillOffset = offset;
+            log.warn("未同步记录超过 {} 条 之后的记录从本地记录文件读取", maxInMemory);
+        }
+    }
+
+    private void removePending() {
+        PendingRecord record = pending.pollFirst();
+        if (record == null) {
+            return;
+        }
+        pendingCount--;
+        if (CONVERSION.equals(record.fields[0])) {
+            decrement(pendingConversions, key(record.fields[1], record.fields[2]));
+            decrement(pendingFolders, record.fields[1]);
+        }
+    }
+
+    /**
+     * 从文件中读取下一批只在文件中的未同步记录
+     * 这部分文件中的 S 行对应的是更早的记录(已经在内存中处理) 跳过
+     */
+    private void readSpilled() {
+        try (LineReader reader = new LineReader(file, spillOffset)) {
+            long next = -1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = parse(line);
+                if (!isPending(fields)) {
+                    continue;
+                }
+                if (pending.size() >= maxInMemory) {
+                    next = reader.getLineOffset();
+                    break;
+                }
+                pending.addLast(new PendingRecord(fields));
+            }
+            spillOffset = next;
+            log.info("从本地记录文件读取未同步记录 {} 条 剩余未同步记录 {} 条", pending.size(), pendingCount);
+        } catch (IOException e) {
+            log.error("读取本地记录文件失败: {} {}", file, e.getMessage());
+        }
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        if (count == null || count <= 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                force();
+                writer.close();
+            } catch (IOException e) {
+                log.error("关闭本地记录文件失败: {}", e.getMessage());
+            }
+            writer = null;
+            output = null;
+        }
+    }
+
+    /**
+     * 读取两遍 第一遍建立已处理索引并统计已同步的条数(S 行总是去掉最早的未同步记录)
+     * 第二遍跳过已同步的记录 最早的 maxInMemory 条未同步记录读入内存 其余只记录位置
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        truncateTornTail();
+        int skipped = 0;
+        int synced = 0;
+        try (LineReader reader = new LineReader(file, 0)) {
+            int records = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                lines++;
+                String[] fields = parse(line);
+                if (CONVERSION.equals(fields[0]) && fields.length == 8) {
+                    folders.add(fields[1]);
+                    conversions.add(key(fields[1], fields[2]));
+                }
+                if (isPending(fields)) {
+                    records++;
+                } else if (SYNCED.equals(fields[0]) && fields.length == 2 && isCount(fields[1])) {
+                    synced += Math.min(Integer.parseInt(fields[1]), records - synced);
+                } else if (!CONVERSION.equals(fields[0]) || fields.length != 8) {
+                    skipped++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("读取本地记录文件失败: {} {}", file, e.getMessage());
+        }
+        try (LineReader reader = new LineReader(file, 0)) {
+            int records = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = parse(line);
+                if (isPending(fields) && ++records > synced) {
+                    addPending(new PendingRecord(fields), reader.getLineOffset());
+                }
+            }
+        } catch (IOException e) {
+            log.error("读取本地记录文件失败: {} {}", file, e.getMessage());
+        }
+        log.info("本地记录已加载: {} 已处理文件 {} 个 未同步记录 {} 条{}", file, conversions.size(), pendingCount,
+                skipped > 0 ? " 跳过无法解析的行 " + skipped + " 行" : "");
+    }
+
+    /**
+     * 写入中断时文件最后一行可能不完整(没有换行符) 截掉不完整的部分
+     * 否则之后追加的记录会接在这一行后面 重启后无法解析
+     */
+    private void truncateTornTail() {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            byte[] buffer = new byte[4096];
+            while (end > 0) {
+                int count = (int) Math.min(buffer.length, end);
+                raf.seek(end - count);
+                raf.readFully(buffer, 0, count);
+                int i = count - 1;
+                while (i >= 0 && buffer[i] != '\n') {
+                    i--;
+                }
+                if (i >= 0) {
+                    end = end - count + i + 1;
+                    break;
+                }
+                end -= count;
+            }
+            if (end < length) {
+                raf.setLength(end);
+                log.warn("本地记录文件最后一行不完整 已截掉 {} 字节: {}", length - end, file);
+            }
+        } catch (IOException e) {
+            log.error("检查本地记录文件失败: {} {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 重复的和已同步的记录较多时整理文件
+     */
+    private void compactIfNeeded() {
+        if (lines > 2 * (conversions.size() + pendingCount) + 1000) {
+            compact();
+        }
+    }
+
+    /**
+     * 重写文件 已同步的文件转换记录每个文件保留一行 加上未同步的记录
+     */
+    private void compact() {
+        close();
+        File tmp = new File(file.getPath() + ".tmp");
+        int written = 0;
+        long newSpillOffset = -1;
+        try (FileOutputStream tmpOutput = new FileOutputStream(tmp);
+             Writer out = new BufferedWriter(new OutputStreamWriter(tmpOutput, StandardCharsets.UTF_8))) {
+            for (String conversion : conversions) {
+                if (pendingConversions.containsKey(conversion)) {
+                    continue;
+                }
+                int separator = conversion.indexOf('\0');
+                writeLine(out, new String[]{CONVERSION, conversion.substring(0, separator), conversion.substring(separator + 1),
+                        null, null, "0", null, "1"});
+                written++;
+            }
+            for (PendingRecord record : pending) {
+                writeLine(out, record.fields);
+                written++;
+            }
+            if (spillOffset >= 0) {
+                // 只在文件中的记录原样复制 并记录在新文件中的位置
+                out.flush();
+                newSpillOffset = tmpOutput.getChannel().position();
+                try (LineReader reader = new LineReader(file, spillOffset)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (isPending(parse(line))) {
+                            out.write(line);
+                            out.write('\n');
+                            written++;
+                        }
+                    }
+                }
+            }
+            // 替换前落盘 避免崩溃后原文件被替换为不完整的文件
+            out.flush();
+            tmpOutput.getChannel().force(false);
+        } catch (IOException e) {
+            log.error("整理本地记录文件失败: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("本地记录文件已整理: {} 行 -> {} 行", lines, written);
+            lines = written;
+            spillOffset = newSpillOffset;
+        } catch (IOException e) {
+            log.error("替换本地记录文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 追加一行
+     *
+     * @return 这一行在文件中的位置 写入失败时返回 -1
+     */
+    private long append(String[] fields) {
+        try {
+            if (writer == null) {
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (parent != null) {
+                    Files.createDirectories(parent.toPath());
+                }
+                output = new FileOutputStream(file, true);
+                writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            }
+            // 每行写入后都会 flush 通道的位置就是文件末尾
+            long offset = output.getChannel().position();
+            writeLine(writer, fields);
+            writer.flush();
+            unforced = true;
+            lines++;
+            return offset;
+        } catch (IOException e) {
+            log.error("写入本地记录文件失败: {} {}", file, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 把已写入的记录刷到磁盘
+     *
+     * @return 是否成功 没有需要刷盘的记录时返回 true
+     */
+    private boolean force() {
+        if (!unforced || output == null) {
+            return true;
+        }
+        try {
+            output.getChannel().force(false);
+            unforced = false;
+            return true;
+        } catch (IOException e) {
+            log.error("本地记录文件刷盘失败: {} {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void writeLine(Writer out, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write('\t');
+            }
+            out.write(escape(fields[i]));
+        }
+        out.write('\n');
+    }
+
+    private static String[] parse(String line) {
+        String[] fields = line.split("\t", -1);
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = unescape(fields[i]);
+        }
+        return fields;
+    }
+
+    /**
+     * 未同步的文件转换记录或图片记录
+     */
+    private static boolean isPending(String[] fields) {
+        return CONVERSION.equals(fields[0]) && fields.length == 8 && "0".equals(fields[7])
+                || PNG.equals(fields[0]) && fields.length == 14;
+    }
+
+    private static String key(String folderName, String fileName) {
+        return folderName + '\0' + fileName;
+    }
+
+    private static boolean isCount(String text) {
+        return text != null && text.matches("\\d{1,9}");
+    }
+
+    private static String toText(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static Long toLong(String text) {
+        return text != null ? Long.valueOf(text) : null;
+    }
+
+    private static Integer toInteger(String text) {
+        return text != null ? Integer.valueOf(text) : null;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String value) {
+        if (NULL.equals(value)) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按字节读取行 记录每一行在文件中的位置
+     */
+    private static final class LineReader implements Closeable {
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position;
+        private int limit;
+        private long offset;
+        private long lineOffset;
+
+        private LineReader(File file, long start) throws IOException {
+            FileInputStream input = new FileInputStream(file);
+            input.getChannel().position(start);
+            this.in = input;
+            this.offset = start;
+        }
+
+        /**
+         * @return 下一行 不含换行符 文件结束时返回 null
+         */
+        private String readLine() throws IOException {
+            line.reset();
+            lineOffset = offset;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return line.size() > 0 ? new String(line.toByteArray(), StandardCharsets.UTF_8) : null;
+                    }
+                }
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                line.write(buffer, start, position - start);
+                offset += position - start;
+                if (position < limit) {
+                    position++;
+                    offset++;
+                    return new String(line.toByteArray(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        /**
+         * 最近一次 readLine 返回的行的起始位置
+         */
+        private long getLineOffset() {
+            return lineOffset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * 未同步的记录 字段与文件中的一行相同
+     */
+    private static final class PendingRecord {
+        private final String[] fields;
+
+        private PendingRecord(String[] fields) {
+            this.fields = fields;
+        }
+
+        private void addTo(List<DatabaseManager.FileConversionRecord> conversionRecords,
+                           List<DatabaseManager.DataPngRecord> pngRecords) {
+            String[] f = fields;
+            if (CONVERSION.equals(f[0])) {
+                DatabaseManager.FileConversionRecord record = new DatabaseManager.FileConversionRecord();
+                record.setFolderName(f[1]);
+                record.setFileName(f[2]);
+                record.setFilePath(f[3]);
+                record.setOutputPath(f[4]);
+                record.setFileSize(Long.parseLong(f[5]));
+                record.setStatus(f[6]);
+                conversionRecords.add(record);
+                return;
+            }
+            DatabaseManager.DataPngRecord record = new DatabaseManager.DataPngRecord();
+            record.setId(Long.parseLong(f[1]));
+            record.setEleName(f[2]);
+            record.setDataTime(toLong(f[3]));
+            record.setLevel(toInteger(f[4]));
+            record.setFileName(f[5]);
+            record.setFilePath(f[6]);
+            record.setPngPath(f[7]);
+            record.setJsonPath(f[8]);
+            record.setPngRelativePath(f[9]);
+            record.setJsonRelativePath(f[10]);
+            record.setTaskId(f[11]);
+            record.setTimer(toInteger(f[12]));
+            record.setDate(toInteger(f[13]));
+            pngRecords.add(record);
+        }
+
+        private boolean writeTo(DatabaseManager database) {
+            String[] f = fields;
+            try {
+                if (CONVERSION.equals(f[0])) {
+                    return database.recordFileConversion(f[1], f[2], f[3], f[4], Long.parseLong(f[5]), f[6]);
+                }
+                return database.insertDataPngRecordIfAbsent(Long.parseLong(f[1]), f[2], toLong(f[3]), toInteger(f[4]),
+                        f[5], f[6], f[7], f[8], f[9], f[10], f[11], toInteger(f[12]), toInteger(f[13]));
+            } catch (NumberFormatException e) {
+                log.error("本地记录格式错误: {}", e.getMessage());
+                return false;
+            }
+        }
+    }
+}
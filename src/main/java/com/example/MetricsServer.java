@@ -0,0 +1,106 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 指标 HTTP 服务 GET /metrics 返回 Prometheus 文本格式
+ * 包括各阶段耗时直方图(PipelineMetrics) 以及nc文件句柄、分块缓存的当前状态
+ * 使用 JDK 自带的 HttpServer 单个后台线程处理请求
+ */
+@Slf4j
+public class MetricsServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final String host;
+
+    private final int port;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    public MetricsServer(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * 启动服务 端口被占用等失败只记录日志 不影响文件处理
+     */
+    public synchronized void start() {
+        if (server != null) {
+            return;
+        }
+        try {
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+            httpServer.createContext("/metrics", this::handle);
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+            httpServer.setExecutor(executor);
+            httpServer.start();
+            server = httpServer;
+            log.info("指标服务已启动: http://{}:{}/metrics", host, port);
+        } catch (IOException e) {
+            log.warn("指标服务启动失败 {}:{}===>{}", host, port, e.getMessage());
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * 当前的指标文本
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        PipelineMetrics.writePrometheus(out);
+        out.append("# HELP nc_open_files 当前打开的nc文件句柄数\n");
+        out.append("# TYPE nc_open_files gauge\n");
+        out.append("nc_open_files ").append(NcFileHandleManager.getInstance().getOpenFileCount()).append('\n');
+        out.append("# HELP nc_chunk_cache_bytes 分块数据缓存占用的字节数\n");
+        out.append("# TYPE nc_chunk_cache_bytes gauge\n");
+        out.append("nc_chunk_cache_bytes ").append(NcChunkCache.getInstance().getCurrentBytes()).append('\n');
+        return out.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
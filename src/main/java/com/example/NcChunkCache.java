@@ -0,0 +1,259 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分块(chunk)数据缓存
+ * NetCDF4/HDF5 的分块压缩要素 每读一个切片都要解压覆盖该切片的整个分块
+ * 逐层逐时次读取时 同一个分块会被反复解压 NetCDF-Java 4.6 也没有 HDF5 分块缓存
+ * 这里按分块边界读取包含请求切片的整块数据(前导维度按 _ChunkSizes 对齐 空间维度按请求范围)
+ * 缓存解压后的数据 同一分块内的其他切片直接从内存截取 每个分块只解压一次
+ * 非分块的4维要素(时间、层次、纬度、经度) 按层次整块读取 一个时次的所有层次只读取一次
+ * 缓存按字节数限制 LRU 淘汰 单个块的大小受 blockMaxBytes 和缓存大小的四分之一限制
+ * 默认值下全分辨率的多层要素(例如 ERA5 37层 721*1440 每个时次约150MB)超过上限 按切片读取 第一次遇到时提示
+ */
+@Slf4j
+public class NcChunkCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    public static final long DEFAULT_BLOCK_MAX_BYTES = 16L * 1024 * 1024;
+
+    private static final NcChunkCache INSTANCE = new NcChunkCache(DEFAULT_MAX_BYTES);
+
+    private final LinkedHashMap<BlockKey, Array> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long maxBytes;
+
+    private long currentBytes;
+
+    /**
+     * 已提示过块超过上限的要素
+     */
+    private final Set<String> oversized = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 单个块的大小上限 超过时直接按切片读取 0 表示只缓存分块要素 不按层次整块读取
+     */
+    private volatile long blockMaxBytes = DEFAULT_BLOCK_MAX_BYTES;
+
+    NcChunkCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static NcChunkCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 设置缓存大小 0 表示不缓存
+     *
+     * @param maxBytes 字节数
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 设置单个块的大小上限
+     *
+     * @param blockMaxBytes 字节数 0 表示不按层次整块读取
+     */
+    public void setBlockMaxBytes(long blockMaxBytes) {
+        this.blockMaxBytes = Math.max(0, blockMaxBytes);
+    }
+
+    public long getBlockMaxBytes() {
+        return blockMaxBytes;
+    }
+
+    /**
+     * 当前缓存的字节数
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized void clear() {
+        blocks.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * 读取切片 分块要素按分块对齐读取并缓存 非分块的4维要素按层次整块读取并缓存 其他要素直接读取
+     *
+     * @param variable 要素
+     * @param org      起始
+     * @param sha      大小
+     * @return 数据 可能是缓存块的视图 只读
+     */
+    public Array read(Variable variable, int[] org, int[] sha) throws IOException, InvalidRangeException {
+        long maxBytes = getMaxBytes();
+        if (maxBytes <= 0) {
+            return variable.read(org, sha);
+        }
+        int[] chunkSizes = getChunkSizes(variable);
+        if (chunkSizes == null) {
+            chunkSizes = getLevelBlockSizes(variable);
+        }
+        if (chunkSizes == null) {
+            return variable.read(org, sha);
+        }
+        int rank = org.length;
+        int[] shape = variable.getShape();
+        int[] blockOrg = new int[rank];
+        int[] blockSha = new int[rank];
+        int[] relOrg = new int[rank];
+        boolean widened = false;
+        for (int i = 0; i < rank; i++) {
+            int start = (org[i] / chunkSizes[i]) * chunkSizes[i];
+            int end = Math.min(shape[i], start + chunkSizes[i]);
+            if (i < rank - 2 && sha[i] == 1 && end - start > 1) {
+                // 前导维度扩展到整个分块
+                blockOrg[i] = start;
+                blockSha[i] = end - start;
+                widened = true;
+            } else {
+                blockOrg[i] = org[i];
+                blockSha[i] = sha[i];
+            }
+            relOrg[i] = org[i] - blockOrg[i];
+        }
+        long blockBytes = variable.getElementSize();
+        for (int size : blockSha) {
+            blockBytes *= size;
+        }
+        // 前导维度分块为1 或者整块超过单块上限/缓存的四分之一 直接读取
+        long admission = Math.min(maxBytes / 4, blockMaxBytes > 0 ? blockMaxBytes : Long.MAX_VALUE);
+        if (!widened) {
+            return variable.read(org, sha);
+        }
+        if (blockBytes > admission) {
+            if (oversized.add(variable.getFullName())) {
+                log.info("要素 {} 的整块大小 {} MB 超过单块上限 {} MB 按切片读取 需要整块读取时调大 read.block.max.mb 和 netcdf.chunk.cache.mb(至少为4倍)",
+                        variable.getFullName(), blockBytes >> 20, admission >> 20);
+            }
+            return variable.read(org, sha);
+        }
+        BlockKey key = new BlockKey(variable, blockOrg, blockSha);
+        Array block;
+        synchronized (this) {
+            block = blocks.get(key);
+        }
+        if (block == null) {
+            block = variable.read(blockOrg, blockSha);
+            synchronized (this) {
+                if (blocks.put(key, block) == null) {
+                    currentBytes += block.getSizeBytes();
+                }
+                evict();
+            }
+        }
+        // 保留长度为1的维度 与 variable.read(org, sha) 的形状一致
+        return block.sectionNoReduce(relOrg, sha, null);
+    }
+
+    /**
+     * 要素的分块大小 非分块要素返回 null
+     */
+    static int[] getChunkSizes(Variable variable) {
+        Attribute attribute = variable.findAttribute("_ChunkSizes");
+        if (attribute == null || attribute.getLength() != variable.getRank()) {
+            return null;
+        }
+        int[] chunkSizes = new int[attribute.getLength()];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            Number value = attribute.getNumericValue(i);
+            if (value == null || value.intValue() <= 0) {
+                return null;
+            }
+            chunkSizes[i] = value.intValue();
+        }
+        return chunkSizes;
+    }
+
+    /**
+     * 非分块的4维及以上要素 按层次维度(倒数第三维)整块读取 其余前导维度为1
+     * 例如 [time, level, lat, lon] 为 [1, nLevels, lat, lon]
+     */
+    private int[] getLevelBlockSizes(Variable variable) {
+        int rank = variable.getRank();
+        if (rank < 4 || blockMaxBytes <= 0) {
+            return null;
+        }
+        int[] shape = variable.getShape();
+        int[] blockSizes = new int[rank];
+        for (int i = 0; i < rank; i++) {
+            blockSizes[i] = i >= rank - 3 ? Math.max(1, shape[i]) : 1;
+        }
+        return blockSizes;
+    }
+
+    /**
+     * 超过上限时按 LRU 淘汰 需持有锁调用
+     */
+    private void evict() {
+        Iterator<Map.Entry<BlockKey, Array>> iterator = blocks.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            currentBytes -= iterator.next().getValue().getSizeBytes();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 块的 key 文件按 NetcdfFile 实例区分
+     * 文件被重写后句柄管理会重新打开 旧实例的块不会再被命中 读取时不再检查文件修改时间
+     */
+    private static final class BlockKey {
+        private final NetcdfFile netcdfFile;
+        private final String variableName;
+        private final int[] blockOrg;
+        private final int[] blockSha;
+        private final int hash;
+
+        private BlockKey(Variable variable, int[] blockOrg, int[] blockSha) {
+            this.netcdfFile = variable.getParentGroup().getNetcdfFile();
+            this.variableName = variable.getFullName();
+            this.blockOrg = blockOrg;
+            this.blockSha = blockSha;
+            this.hash = 31 * (31 * (31 * System.identityHashCode(netcdfFile) + variableName.hashCode())
+                    + Arrays.hashCode(blockOrg)) + Arrays.hashCode(blockSha);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) o;
+            return netcdfFile == other.netcdfFile && variableName.equals(other.variableName)
+                    && Arrays.equals(blockOrg, other.blockOrg) && Arrays.equals(blockSha, other.blockSha);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.experimental.Accessors;
 import org.apache.commons.lang3.StringUtils;
 import ucar.ma2.Array;
+import ucar.ma2.IndexIterator;
 import ucar.nc2.Dimension;
 
 import java.util.Arrays;
@@ -57,6 +58,28 @@ public class NcDataModel {
      * 偏移量
      */
     double addOffset = 0.0;
+    /**
+     * 缺测值 missing_value
+     */
+    double missingValue = Double.NaN;
+    /**
+     * 有效范围 valid_min / valid_max (打包值)
+     */
+    Double validMin;
+    Double validMax;
+    /**
+     * 实际范围 actual_range (解包值)
+     */
+    Double actualMin;
+    Double actualMax;
+    /**
+     * 是否信任属性中的值域 信任时直接作为色标范围 不再统计最大最小值
+     */
+    boolean rangeFromAttributes = false;
+    /**
+     * 固定色标范围 [min, max] 来自要素值域表 为空时按属性或数据统计
+     */
+    double[] fixedRange;
 
     String unit;
     /**
@@ -83,6 +106,11 @@ public class NcDataModel {
      */
     String lonName;
 
+    /**
+     * 经纬度位置是否已经确定 来自元数据缓存时不再重新判断
+     */
+    boolean reversalChecked = false;
+
     /**
      * 读取第一个数
      *
@@ -101,26 +129,46 @@ public class NcDataModel {
     public double[][] convertDouble2Array(Array array) {
         // 判断需要需要翻转
         checkReversal();
-        if (rank != 2) {
-
+        Array view = array.reduce();
+        if (needReversal) {
+            // 经度在前 转置视图 按 [lat][lon] 顺序读取 不复制原始数据
+            view = view.transpose(0, 1);
         }
-        double[][] twoRank = NumberUtils.transformToDoubleTwoRank(array.reduce().copyToNDJavaArray());
-        for (int i = 0; i < twoRank.length; i++) {
-            for (int j = 0; j < twoRank[0].length; j++) {
-                if (twoRank[i][j] != fillValue) {
-                    twoRank[i][j] = twoRank[i][j] * scaleFactor + addOffset;
-                } else {
-                    twoRank[i][j] = NumberUtils.inputInvalidValue;
-                }
+        int[] shape = view.getShape();
+        double[][] twoRank = new double[shape[0]][shape[1]];
+        IndexIterator iterator = view.getIndexIterator();
+        for (double[] row : twoRank) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = iterator.getDoubleNext();
             }
         }
-        if (needReversal) {
-            return NumberUtils.reversal2doubleArray(twoRank);
-        } else {
-            return twoRank;
+        // 解包的同时屏蔽无效值 无效值统一为 NaN 后续统计和渲染只需判断 NaN
+        double[] bounds = validBounds();
+        for (double[] row : twoRank) {
+            NumberUtils.unpackAndMask(row, scaleFactor, addOffset, fillValue, maskedMissingValue(), bounds[0], bounds[1]);
         }
+        return twoRank;
     }
 
+    /**
+     * 按存储顺序转换为一维数组 解包并屏蔽无效值(NaN)
+     * 不做转置 由调用方按步长访问
+     *
+     * @param array 原始数据 去掉长度为1的维度后为二维
+     * @return
+     */
+    public double[] convertDoubleVector(Array array) {
+        checkReversal();
+        Array reduced = array.reduce();
+        double[] data = new double[(int) reduced.getSize()];
+        IndexIterator iterator = reduced.getIndexIterator();
+        for (int k = 0; iterator.hasNext(); k++) {
+            data[k] = iterator.getDoubleNext();
+        }
+        double[] bounds = validBounds();
+        NumberUtils.unpackAndMask(data, scaleFactor, addOffset, fillValue, maskedMissingValue(), bounds[0], bounds[1]);
+        return data;
+    }
 
     /**
      * 转换为1维数组
@@ -148,6 +196,9 @@ public class NcDataModel {
      * 默认应该为 纬度在前 经度在后
      */
     public void checkReversal() {
+        if (reversalChecked) {
+            return;
+        }
         int latIndex = 0;
         int lonIndex = 0;
         for (int i = 0; i < dimensionList.size(); i++) {
@@ -182,6 +233,7 @@ public class NcDataModel {
         if (latIndex > lonIndex) {
             needReversal = true;
         }
+        reversalChecked = true;
     }
 
     public String getLatName() {
@@ -201,7 +253,6 @@ public class NcDataModel {
      * @param path
      */
     public void toPng(String path, double[] lat, double[] lon, boolean fromLeft, boolean fromBottom) {
-        double[][] data = convertDouble2Array(dataArray);
         // 获取最小值
         double latMin = NumberUtils.minDoubleArray(lat);
         double lonMin = NumberUtils.minDoubleArray(lon);
@@ -221,40 +272,101 @@ public class NcDataModel {
         if (lat.length > 1) {
             latStep = lat[1] - lat[0];
         }
-        double min = 999999;
-        double max = -999999;
-        for (int i = 0, count = data.length; i < count; i++) {
-            for (int j = 0; j < data[i].length; j++) {
-                if (data[i][j] == -999 || data[i][j] <= -998 || data[i][j] == 999999 || data[i][j] == -9999 || data[i][j] > 999999 || data[i][j] == 9999 || data[i][j] == NumberUtils.inputInvalidValue || data[i][j] == fillValue) {
-                    data[i][j] = NumberUtils.inputInvalidValue;
-                    continue;
-                }
-                if (min > data[i][j]) {
-                    min = data[i][j];
-                }
-                if (max < data[i][j]) {
-                    max = data[i][j];
-                }
+        String grid = PipelineMetrics.grid(width, height);
+        // 色标范围 固定值域优先 其次为属性值域
+        double[] knownRange = fixedRange;
+        if (knownRange == null && rangeFromAttributes) {
+            knownRange = getAttributeRange();
+        }
+        if (knownRange != null) {
+            // 值域已知 解包、屏蔽、量化在一次遍历内完成 不再生成中间数组
+            double min = Double.parseDouble(NumberUtils.scienceD(knownRange[0]));
+            double max = Double.parseDouble(NumberUtils.scienceD(knownRange[1]));
+            long size = dataArray.getSize();
+            if (size != (long) width * height) {
+                throw new RuntimeException("数据个数:" + size + " 与经纬度个数不一致:" + width + "*" + height);
             }
+            long start = PipelineMetrics.start();
+            JsonUtils.writeJsonToFile(String.valueOf(min), String.valueOf(max), String.valueOf(width), String.valueOf(height), String.valueOf(lonMin), String.valueOf(latMin), String.valueOf(lonMax), String.valueOf(latMax),
+                    String.valueOf(Math.abs(lonStep)), String.valueOf(Math.abs(latStep)), String.valueOf(unit != null ? unit : ""), path);
+            PipelineMetrics.record(PipelineMetrics.Stage.JSON, variableName, grid, start);
+            start = PipelineMetrics.start();
+            int[] argb = toArgb(dataArray, width, height, fromLeft, fromBottom, min, max);
+            PipelineMetrics.record(PipelineMetrics.Stage.CONVERT, variableName, grid, start);
+            start = PipelineMetrics.start();
+            PngUtils.writeArgbToPng(path, argb, width, height);
+            PipelineMetrics.record(PipelineMetrics.Stage.PNG, variableName, grid, start);
+            return;
+        }
+
+        // 按存储顺序读取 不做转置
+        long start = PipelineMetrics.start();
+        double[] data = convertDoubleVector(dataArray);
+        if (data.length != width * height) {
+            throw new RuntimeException("数据个数:" + data.length + " 与经纬度个数不一致:" + width + "*" + height);
         }
-        max = Double.parseDouble(NumberUtils.scienceD(max));
-        min = Double.parseDouble(NumberUtils.scienceD(min));
+        double[] peek = peekValue(data);
+        double max = Double.parseDouble(NumberUtils.scienceD(peek[1]));
+        double min = Double.parseDouble(NumberUtils.scienceD(peek[0]));
+        PipelineMetrics.record(PipelineMetrics.Stage.CONVERT, variableName, grid, start);
 
+        start = PipelineMetrics.start();
         JsonUtils.writeJsonToFile(String.valueOf(min), String.valueOf(max), String.valueOf(width), String.valueOf(height), String.valueOf(lonMin), String.valueOf(latMin), String.valueOf(lonMax), String.valueOf(latMax),
                 String.valueOf(Math.abs(lonStep)), String.valueOf(Math.abs(latStep)), String.valueOf(unit != null ? unit : ""), path);
-        if (fromLeft && fromBottom) {
-            // 从左下角开始渲染
-            PngUtils.writeDataToPngFromLeftBottom(path, data, data[0].length, data.length);
-        } else if (fromLeft && !fromBottom) {
-            // 从左上角开始渲染
-            PngUtils.writeDataToPngFromLeftTop(path, data, data[0].length, data.length);
-        } else if (!fromLeft && fromBottom) {
-            // 从右下角开始渲染
-            //  暂时没有实现方法
-        } else if (!fromLeft && !fromBottom) {
-            // 从右上角开始渲染
-            //  暂时没有实现方法
+        PipelineMetrics.record(PipelineMetrics.Stage.JSON, variableName, grid, start);
+        // 存储顺序为 纬度在前时 [lat][lon] 经度在前时 [lon][lat]
+        int latStride = needReversal ? 1 : width;
+        int lonStride = needReversal ? height : 1;
+        // 图片左上角对应的数据位置 纬度从小到大时从下向上渲染 经度从大到小时从右向左渲染
+        int origin = (fromBottom ? (height - 1) * latStride : 0) + (fromLeft ? 0 : (width - 1) * lonStride);
+        int rowStride = fromBottom ? -latStride : latStride;
+        int colStride = fromLeft ? lonStride : -lonStride;
+        start = PipelineMetrics.start();
+        PngUtils.writeDataToPng(path, data, origin, rowStride, colStride, width, height, min, max);
+        PipelineMetrics.record(PipelineMetrics.Stage.PNG, variableName, grid, start);
+    }
+
+    /**
+     * 按已知色标范围 一次遍历原始数据直接生成像素
+     * 原始数据按存储顺序读取 解包(scale/offset)、屏蔽无效值和量化同时完成
+     *
+     * @param array      原始数据 去掉长度为1的维度后为二维
+     * @param width      经度个数
+     * @param height     纬度个数
+     * @param fromLeft   经度是否从小到大 否则从右向左渲染
+     * @param fromBottom 纬度是否从小到大 是则从下向上渲染
+     * @param min        色标最小值
+     * @param max        色标最大值
+     * @return 像素 ARGB 行优先
+     */
+    int[] toArgb(Array array, int width, int height, boolean fromLeft, boolean fromBottom, double min, double max) {
+        // 判断需要需要翻转
+        checkReversal();
+        double[] bounds = validBounds();
+        double validLow = bounds[0];
+        double validHigh = bounds[1];
+        double missing = maskedMissingValue();
+        int[] argb = new int[width * height];
+        IndexIterator iterator = array.reduce().getIndexIterator();
+        // 存储顺序为 纬度在前时 [lat][lon] 经度在前时 [lon][lat]
+        int inner = needReversal ? height : width;
+        for (int k = 0; iterator.hasNext(); k++) {
+            double raw = iterator.getDoubleNext();
+            int latIndex = needReversal ? k % inner : k / inner;
+            int lonIndex = needReversal ? k / inner : k % inner;
+            int x = fromLeft ? lonIndex : width - lonIndex - 1;
+            int y = fromBottom ? height - latIndex - 1 : latIndex;
+            double value = raw * scaleFactor + addOffset;
+            // 与 NumberUtils.unpackAndMask 相同的无效值判断
+            boolean invalid = raw == fillValue | raw == missing | raw < validLow | raw > validHigh
+                    | value == fillValue | value != value | NumberUtils.isSentinel(value);
+            if (invalid) {
+                continue;
+            }
+            // 透明度|red|green|blue
+            argb[y * width + x] = (255 << 24) | (PngUtils.quantize(value, min, max) << 16);
         }
+        return argb;
     }
 
     /**
@@ -263,6 +375,8 @@ public class NcDataModel {
      * @param path
      */
     public void toWindPng(String path, double[] lat, double[] lon) {
+        String grid = PipelineMetrics.grid(lon.length, lat.length);
+        long start = PipelineMetrics.start();
         double[][] uData = convertDouble2Array(uDataArray);
         double[][] vData = convertDouble2Array(vDataArray);
         // 获取最小值
@@ -295,13 +409,35 @@ public class NcDataModel {
         double[] vPeek = peekValue(vData);
         vMin = Double.parseDouble(NumberUtils.scienceD(vPeek[0]));
         vMax = Double.parseDouble(NumberUtils.scienceD(vPeek[1]));
+        PipelineMetrics.record(PipelineMetrics.Stage.CONVERT, "uv10", grid, start);
         // 写入风
+        start = PipelineMetrics.start();
         JsonUtils.writeJsonToFile(String.valueOf(uMin), String.valueOf(vMin), String.valueOf(uMax), String.valueOf(vMax), String.valueOf(width), String.valueOf(height), String.valueOf(lonMin), String.valueOf(latMin), String.valueOf(lonMax), String.valueOf(latMax),
                 String.valueOf(Math.abs(lonStep)), String.valueOf(Math.abs(latStep)), String.valueOf(unit != null ? unit : ""), path);
+        PipelineMetrics.record(PipelineMetrics.Stage.JSON, "uv10", grid, start);
+        start = PipelineMetrics.start();
         PngUtils.writeUVDataToPngFromLeftBottom(path, uData, vData, uData[0].length, uData.length);
+        PipelineMetrics.record(PipelineMetrics.Stage.PNG, "uv10", grid, start);
         // 从左下角开始渲染
     }
 
+    double[] peekValue(double[] data) {
+        double min = 999999;
+        double max = -999999;
+        for (double value : data) {
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (min > value) {
+                min = value;
+            }
+            if (max < value) {
+                max = value;
+            }
+        }
+        return new double[]{min, max};
+    }
+
     double[] peekValue(double[][] data) {
         double[] peek = new double[2];
 
@@ -309,8 +445,8 @@ public class NcDataModel {
         double max = -999999;
         for (int i = 0, count = data.length; i < count; i++) {
             for (int j = 0; j < data[i].length; j++) {
-                if (data[i][j] == -999 || data[i][j] <= -998 || data[i][j] == 999999 || data[i][j] == -9999 || data[i][j] > 999999 || data[i][j] == 9999 || data[i][j] == NumberUtils.inputInvalidValue || data[i][j] == fillValue) {
-                    data[i][j] = NumberUtils.inputInvalidValue;
+                // 数据已经过 convertDouble2Array 屏蔽 无效值均为 NaN
+                if (Double.isNaN(data[i][j])) {
                     continue;
                 }
                 if (min > data[i][j]) {
@@ -325,7 +461,53 @@ public class NcDataModel {
         peek[0] = min;
         return peek;
     }
-    
+
+    /**
+     * 有效范围(打包值) 只在信任属性时生效 未设置时为正负无穷
+     *
+     * @return [下限, 上限]
+     */
+    private double[] validBounds() {
+        double validLow = Double.NEGATIVE_INFINITY;
+        double validHigh = Double.POSITIVE_INFINITY;
+        if (rangeFromAttributes && isValid(validMin)) {
+            validLow = validMin;
+        }
+        if (rangeFromAttributes && isValid(validMax)) {
+            validHigh = validMax;
+        }
+        return new double[]{validLow, validHigh};
+    }
+
+    /**
+     * 需要屏蔽的缺测值(打包值) 只在信任属性时生效 否则为 NaN 不屏蔽
+     */
+    private double maskedMissingValue() {
+        return rangeFromAttributes ? missingValue : Double.NaN;
+    }
+
+    /**
+     * 根据要素属性获取色标范围(解包后的值)
+     * 优先使用 actual_range 其次使用 valid_min / valid_max
+     *
+     * @return [min, max] 属性不存在或不合法时返回 null
+     */
+    public double[] getAttributeRange() {
+        if (isValid(actualMin) && isValid(actualMax) && actualMax > actualMin) {
+            return new double[]{actualMin, actualMax};
+        }
+        if (isValid(validMin) && isValid(validMax) && validMax > validMin) {
+            double low = validMin * scaleFactor + addOffset;
+            double high = validMax * scaleFactor + addOffset;
+            return new double[]{Math.min(low, high), Math.max(low, high)};
+        }
+        return null;
+    }
+
+    private static boolean isValid(Double value) {
+        return value != null && !value.isNaN() && !value.isInfinite();
+    }
+
     // Getter and Setter methods
     public String getVariableName() {
         return variableName;
@@ -408,6 +590,61 @@ public class NcDataModel {
         return this;
     }
     
+    public double getMissingValue() {
+        return missingValue;
+    }
+
+    public NcDataModel setMissingValue(double missingValue) {
+        this.missingValue = missingValue;
+        return this;
+    }
+
+    public Double getValidMin() {
+        return validMin;
+    }
+
+    public Double getValidMax() {
+        return validMax;
+    }
+
+    public NcDataModel setValidRange(Double validMin, Double validMax) {
+        this.validMin = validMin;
+        this.validMax = validMax;
+        return this;
+    }
+
+    public Double getActualMin() {
+        return actualMin;
+    }
+
+    public Double getActualMax() {
+        return actualMax;
+    }
+
+    public NcDataModel setActualRange(Double actualMin, Double actualMax) {
+        this.actualMin = actualMin;
+        this.actualMax = actualMax;
+        return this;
+    }
+
+    public boolean isRangeFromAttributes() {
+        return rangeFromAttributes;
+    }
+
+    public NcDataModel setRangeFromAttributes(boolean rangeFromAttributes) {
+        this.rangeFromAttributes = rangeFromAttributes;
+        return this;
+    }
+
+    public double[] getFixedRange() {
+        return fixedRange;
+    }
+
+    public NcDataModel setFixedRange(double[] fixedRange) {
+        this.fixedRange = fixedRange;
+        return this;
+    }
+
     public String getUnit() {
         return unit;
     }
@@ -423,6 +660,7 @@ public class NcDataModel {
     
     public NcDataModel setDimensionList(List<String> dimensionList) {
         this.dimensionList = dimensionList;
+        this.reversalChecked = false;
         return this;
     }
     
@@ -443,4 +681,20 @@ public class NcDataModel {
         this.needReversal = needReversal;
         return this;
     }
+
+    /**
+     * 直接设置经纬度位置 不再根据维度名称判断
+     *
+     * @param latName      纬度名称
+     * @param lonName      经度名称
+     * @param needReversal 是否经度在前
+     * @return
+     */
+    public NcDataModel setCoordinateMapping(String latName, String lonName, boolean needReversal) {
+        this.latName = latName;
+        this.lonName = lonName;
+        this.needReversal = needReversal;
+        this.reversalChecked = true;
+        return this;
+    }
 }
\ No newline at end of file
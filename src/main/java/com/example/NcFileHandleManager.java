@@ -0,0 +1,285 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import ucar.nc2.NetcdfFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NetcdfFile 句柄管理
+ * 同一个文件只打开一次(只解析一次文件头) 使用引用计数共享 空闲句柄按 LRU 保留
+ * 打开的文件数超过上限时关闭最久未使用的空闲句柄 正在使用的句柄在释放后才关闭
+ * 文件被重写(修改时间或大小变化)后会重新打开
+ * <p>
+ * 用法:
+ * try (NcFileHandleManager.Handle handle = NcFileHandleManager.getInstance().acquire(filePath)) {
+ * NetcdfFile netcdfFile = handle.getNetcdfFile();
+ * }
+ * NetcdfFile 本身不是线程安全的 多个线程读取同一个句柄时需要在 NetcdfFile 上同步
+ */
+@Slf4j
+public class NcFileHandleManager {
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 16;
+
+    private static final NcFileHandleManager INSTANCE = new NcFileHandleManager(DEFAULT_MAX_OPEN_FILES);
+
+    /**
+     * 访问顺序的 LinkedHashMap 头部为最久未使用 key 为规范化的绝对路径
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int maxOpenFiles;
+
+    /**
+     * RandomAccessFile 缓冲区大小 小于等于0时使用 NetCDF-Java 默认值
+     */
+    private volatile int bufferSize = -1;
+
+    NcFileHandleManager(int maxOpenFiles) {
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+    }
+
+    public static NcFileHandleManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 设置最多保留的打开文件数
+     *
+     * @param maxOpenFiles 上限 最小为1
+     */
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        List<NetcdfFile> toClose;
+        synchronized (this) {
+            this.maxOpenFiles = Math.max(1, maxOpenFiles);
+            toClose = evictIdle();
+        }
+        closeQuietly(toClose);
+    }
+
+    /**
+     * 设置打开文件时的缓冲区大小 只对之后打开的文件生效
+     *
+     * @param bufferSize 字节数 小于等于0时使用默认值
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public synchronized int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    /**
+     * 当前打开的文件数
+     */
+    public synchronized int getOpenFileCount() {
+        return entries.size();
+    }
+
+    /**
+     * 获取文件句柄 引用计数加一 使用完必须 close 释放
+     *
+     * @param filePath 文件路径
+     * @return 句柄
+     * @throws IOException 打开失败
+     */
+    public Handle acquire(String filePath) throws IOException {
+        File file = new File(filePath);
+        String key = normalize(filePath);
+        long lastModified = file.lastModified();
+        long length = file.length();
+        List<NetcdfFile> toClose = new ArrayList<>();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+                entry.refCount++;
+                return new Handle(entry);
+            }
+            if (entry != null) {
+                // 文件已经变化 旧句柄不再分配 空闲时关闭
+                retire(key, entry, toClose);
+            }
+        }
+        closeQuietly(toClose);
+        toClose.clear();
+        // 打开文件不占用锁 避免大文件的文件头解析阻塞其他文件
+        long start = PipelineMetrics.start();
+        NetcdfFile netcdfFile = NetcdfFile.open(filePath, bufferSize, null);
+        PipelineMetrics.record(PipelineMetrics.Stage.OPEN, null, null, start);
+        Entry opened = new Entry(key, netcdfFile, lastModified, length);
+        Entry result;
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (existing != null && existing.lastModified == lastModified && existing.length == length) {
+                // 其他线程已经打开了同一个文件 使用已有的句柄
+                existing.refCount++;
+                result = existing;
+                toClose.add(netcdfFile);
+            } else {
+                if (existing != null) {
+                    retire(key, existing, toClose);
+                }
+                opened.refCount = 1;
+                entries.put(key, opened);
+                result = opened;
+            }
+            toClose.addAll(evictIdle());
+        }
+        closeQuietly(toClose);
+        return new Handle(result);
+    }
+
+    /**
+     * 句柄管理打开的文件的版本 规范化路径@修改时间:大小
+     * 修改时间和大小为打开文件时的检查结果 不访问文件系统
+     *
+     * @param netcdfFile 文件
+     * @return 不是由句柄管理打开或已经淘汰的文件返回 null
+     */
+    public synchronized String getVersion(NetcdfFile netcdfFile) {
+        String location = netcdfFile.getLocation();
+        if (location == null) {
+            return null;
+        }
+        Entry entry = entries.get(normalize(location));
+        if (entry == null || entry.netcdfFile != netcdfFile) {
+            return null;
+        }
+        return entry.key + "@" + entry.lastModified + ":" + entry.length;
+    }
+
+    /**
+     * 关闭所有空闲句柄 正在使用的句柄在释放后关闭
+     */
+    public void closeAll() {
+        List<NetcdfFile> toClose = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                iterator.remove();
+                entry.retired = true;
+                if (entry.refCount == 0) {
+                    toClose.add(entry.netcdfFile);
+                }
+            }
+        }
+        closeQuietly(toClose);
+    }
+
+    private void release(Entry entry) {
+        List<NetcdfFile> toClose = new ArrayList<>();
+        synchronized (this) {
+            entry.refCount--;
+            if (entry.refCount == 0 && entry.retired) {
+                toClose.add(entry.netcdfFile);
+            } else {
+                toClose.addAll(evictIdle());
+            }
+        }
+        closeQuietly(toClose);
+    }
+
+    /**
+     * 从表中移除 空闲时加入待关闭列表 否则在释放后关闭
+     */
+    private void retire(String key, Entry entry, List<NetcdfFile> toClose) {
+        entries.remove(key);
+        // 文件已经变化 旧版本的元数据不会再使用
+        NcMetadataCache.invalidate(key);
+        entry.retired = true;
+        if (entry.refCount == 0) {
+            toClose.add(entry.netcdfFile);
+        }
+    }
+
+    /**
+     * 超过上限时 按 LRU 顺序移除空闲句柄 需持有锁调用 返回需要关闭的文件
+     */
+    private List<NetcdfFile> evictIdle() {
+        List<NetcdfFile> toClose = new ArrayList<>();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxOpenFiles && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.refCount == 0) {
+                iterator.remove();
+                entry.retired = true;
+                toClose.add(entry.netcdfFile);
+            }
+        }
+        if (entries.size() > maxOpenFiles) {
+            log.warn("打开的nc文件数:{} 超过上限:{} 均在使用中", entries.size(), maxOpenFiles);
+        }
+        return toClose;
+    }
+
+    private static String normalize(String filePath) {
+        return new File(filePath).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    private static void closeQuietly(List<NetcdfFile> files) {
+        for (NetcdfFile netcdfFile : files) {
+            try {
+                netcdfFile.close();
+            } catch (IOException e) {
+                log.error("关闭nc文件失败:{}===>{}", netcdfFile.getLocation(), e.getMessage());
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final NetcdfFile netcdfFile;
+        private final long lastModified;
+        private final long length;
+        private int refCount;
+        /**
+         * 已从表中移除 引用计数归零时关闭
+         */
+        private boolean retired;
+
+        private Entry(String key, NetcdfFile netcdfFile, long lastModified, long length) {
+            this.key = key;
+            this.netcdfFile = netcdfFile;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 文件句柄 close 时释放引用 不会直接关闭文件
+     */
+    public final class Handle implements AutoCloseable {
+        private final Entry entry;
+        private boolean released;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public NetcdfFile getNetcdfFile() {
+            return entry.netcdfFile;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            release(entry);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example;
+
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * nc文件元数据缓存 key 为文件路径、修改时间和大小(见 NcFileHandleManager.getVersion)
+ * 修改时间和大小取自句柄管理打开文件时的检查结果 读取切片时不再访问文件系统
+ * 句柄被淘汰后重新打开同一个文件仍然命中缓存 文件被重写时由句柄管理清除旧的缓存
+ * 不是由句柄管理打开的文件不缓存
+ * 缓存要素元数据(维度、单位、打包属性、经纬度位置) 和坐标数据(经纬度、层次、时间)
+ * 重试、预扫描以及每个切片的模型构建都直接使用缓存 不再重复解析文件头
+ */
+public class NcMetadataCache {
+
+    /**
+     * 最多缓存的文件数
+     */
+    public static final int MAX_FILES = 64;
+
+    private static final Map<String, FileMetadata> CACHE = new LinkedHashMap<String, FileMetadata>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileMetadata> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
+    private NcMetadataCache() {
+    }
+
+    /**
+     * 获取要素元数据 缓存不存在或文件已变化时重新解析
+     *
+     * @param variable 要素
+     * @return
+     */
+    public static NcVariableMetadata getVariableMetadata(Variable variable) {
+        FileMetadata fileMetadata = getFileMetadata(variable);
+        if (fileMetadata == null) {
+            return NcReader.readVariableMetadata(variable);
+        }
+        return fileMetadata.variables.computeIfAbsent(variable.getFullName(), key -> NcReader.readVariableMetadata(variable));
+    }
+
+    /**
+     * 获取坐标数据 返回副本 调用方可以修改
+     *
+     * @param variable 坐标要素
+     * @param row      二维坐标时是否取第一行
+     * @param loader   缓存不存在时的读取方法
+     * @return
+     */
+    public static double[] getCoordinateValues(Variable variable, boolean row, Supplier<double[]> loader) {
+        FileMetadata fileMetadata = getFileMetadata(variable);
+        if (fileMetadata == null) {
+            return loader.get();
+        }
+        String key = variable.getFullName() + (row ? "#row" : "#col");
+        double[] values = fileMetadata.coordinates.get(key);
+        if (values == null) {
+            values = loader.get();
+            if (values == null) {
+                return null;
+            }
+            fileMetadata.coordinates.put(key, values);
+        }
+        return values.clone();
+    }
+
+    /**
+     * 清除指定文件所有版本的缓存 文件被重写后由句柄管理调用
+     *
+     * @param filePath 文件路径
+     */
+    public static void invalidate(String filePath) {
+        String prefix = normalize(filePath) + "@";
+        synchronized (CACHE) {
+            CACHE.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private static FileMetadata getFileMetadata(Variable variable) {
+        NetcdfFile netcdfFile = variable.getParentGroup() != null ? variable.getParentGroup().getNetcdfFile() : null;
+        String version = netcdfFile != null ? NcFileHandleManager.getInstance().getVersion(netcdfFile) : null;
+        if (version == null) {
+            return null;
+        }
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(version, key -> new FileMetadata());
+        }
+    }
+
+    private static String normalize(String filePath) {
+        return new File(filePath).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    private static final class FileMetadata {
+        private final Map<String, NcVariableMetadata> variables = new ConcurrentHashMap<>();
+        private final Map<String, double[]> coordinates = new ConcurrentHashMap<>();
+    }
+}
@@ -10,8 +10,8 @@ import ucar.nc2.*;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -29,11 +29,13 @@ public class NcReader {
     /**
      * 要素列表转map key为shortname value为要素
      *
+     * 文件在返回前关闭 返回的要素只能使用元数据(名称、维度、属性) 需要读取数据时通过 NcFileHandleManager 持有句柄
+     *
      * @param filePath 要素列表
      * @return
      */
     public static Map<String, Variable> variablesTranToShortNameVariableMap(String filePath) throws Exception {
-        try (NetcdfFile netcdfFile = NetcdfFile.open(filePath);) {
+        try (NetcdfFile netcdfFile = NetcdfFile.open(filePath)) {
             return netcdfFile.getVariables().stream().collect(Collectors.toMap(CDMNode::getShortName, item -> item));
         }
     }
@@ -75,8 +77,8 @@ public class NcReader {
         if (!new File(filePath).exists()) {
             throw new FileNotFoundException("文件 " + filePath + "不存在!");
         }
-        try (NetcdfFile dataSet = NetcdfFile.open(filePath);) {
-            List<Variable> variables = dataSet.getVariables();
+        try (NcFileHandleManager.Handle handle = NcFileHandleManager.getInstance().acquire(filePath)) {
+            List<Variable> variables = handle.getNetcdfFile().getVariables();
             Variable variable = null;
             for (Variable item : variables) {
                 if (StringUtils.equals(item.getShortName(), variableName)) {
@@ -129,81 +131,97 @@ public class NcReader {
     public static NcDataModel readNcDataTrue(Variable variable, int[] org, int[] sha) {
         try {
             if (variable != null) {
-                // 获取填充值
-                List<Attribute> attributes = variable.getAttributes();
-                // 读取数据
-                double fillValue = Double.MAX_VALUE;
-                // 获取填充值
-                for (Attribute attribute : attributes) {
-                    String shortName = attribute.getShortName();
-                    if (StringUtils.equals(shortName, "_FillValue")) {
-                        fillValue = getVariableAttributeValue(attribute, fillValue);
-                    }
-                }
-                // 获取倍数
-                double scaleFactor = 1.0;
-                // 获取填充值
-                for (Attribute attribute : attributes) {
-                    String shortName = attribute.getShortName();
-                    if (StringUtils.equals(shortName, "scale_factor")) {
-                        scaleFactor = getVariableAttributeValue(attribute, scaleFactor);
-                    }
-                }
-                // 获取偏移
-                double addOffset = 0.0;
-                // 获取填充值
-                for (Attribute attribute : attributes) {
-                    String shortName = attribute.getShortName();
-                    if (StringUtils.equals(shortName, "add_offset")) {
-                        addOffset = getVariableAttributeValue(attribute, addOffset);
-                    }
-                }
-                // 获取维度
-                int rank = variable.getRank();
-                // 填充维度
-                List<Dimension> dimensions = variable.getDimensions();
-                Map<String, Dimension> dimensionMap = new HashMap<>();
-                List<String> dimensionList = new LinkedList<>();
-                for (Dimension dimension : dimensions) {
-                    dimensionMap.put(dimension.getShortName(), dimension);
-                    dimensionList.add(dimension.getShortName());
-                }
+                // 文件头信息来自元数据缓存 同一个文件只解析一次
+                NcVariableMetadata metadata = NcMetadataCache.getVariableMetadata(variable);
+                int rank = metadata.getRank();
                 // 起始维度数组 要素读取数据的大小
                 Array array = null;
+                long start = PipelineMetrics.start();
                 if (org != null && sha != null) {
                     if (rank != org.length || rank != sha.length) {
                         throw new RuntimeException("请求数据维度不正确!");
                     }
-                    array = variable.read(org, sha);
+                    // 分块压缩的要素按分块读取并缓存 同一分块只解压一次
+                    array = NcChunkCache.getInstance().read(variable, org, sha);
                 } else {
                     array = variable.read();
                 }
-                String unit = variable.getUnitsString();
-                
-                // 如果unit为null或空，尝试根据变量名推断单位
-                if (unit == null || unit.trim().isEmpty()) {
-                    unit = inferUnitFromVariableName(variable.getShortName());
+                if (rank >= 2) {
+                    int[] readShape = sha != null ? sha : metadata.getShape();
+                    PipelineMetrics.record(PipelineMetrics.Stage.READ, metadata.getShortName(),
+                            PipelineMetrics.grid(readShape[rank - 1], readShape[rank - 2]), start);
+                } else {
+                    PipelineMetrics.record(PipelineMetrics.Stage.READ, metadata.getShortName(), null, start);
                 }
-                
-                NcDataModel ncDataModel = new NcDataModel();
-                ncDataModel.setDataArray(array)
-                        .setUnit(unit)
-                        .setAddOffset(addOffset)
-                        .setDimensionList(dimensionList)
-                        .setRank(rank)
-                        .setFillValue(fillValue)
-                        .setScaleFactor(scaleFactor)
-                        .setDimensionMap(dimensionMap)
-                        .setVariableName(variable.getShortName());
-                return ncDataModel;
+                return metadata.newDataModel(array);
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            log.error("读取要素:{} 数据失败!", variable.getShortName());
+            log.error("读取要素:{} 数据失败!", variable.getShortName(), e);
         }
         return null;
     }
 
+    /**
+     * 解析要素元数据 属性只遍历一次
+     * 一般通过 NcMetadataCache.getVariableMetadata 获取
+     *
+     * @param variable 要素
+     * @return
+     */
+    static NcVariableMetadata readVariableMetadata(Variable variable) {
+        // 读取数据
+        double fillValue = Double.MAX_VALUE;
+        // 缺测值
+        double missingValue = Double.NaN;
+        // 获取倍数
+        double scaleFactor = 1.0;
+        // 获取偏移
+        double addOffset = 0.0;
+        // 有效范围(打包值) 和 实际范围(解包值)
+        Double validMin = null;
+        Double validMax = null;
+        Double actualMin = null;
+        Double actualMax = null;
+        for (Attribute attribute : variable.getAttributes()) {
+            String shortName = attribute.getShortName();
+            if (StringUtils.equals(shortName, "_FillValue")) {
+                fillValue = getVariableAttributeValue(attribute, fillValue);
+            } else if (StringUtils.equals(shortName, "missing_value")) {
+                missingValue = getVariableAttributeValue(attribute, missingValue);
+            } else if (StringUtils.equals(shortName, "scale_factor")) {
+                scaleFactor = getVariableAttributeValue(attribute, scaleFactor);
+            } else if (StringUtils.equals(shortName, "add_offset")) {
+                addOffset = getVariableAttributeValue(attribute, addOffset);
+            } else if (StringUtils.equals(shortName, "valid_min")) {
+                validMin = getVariableAttributeValue(attribute, Double.NaN);
+            } else if (StringUtils.equals(shortName, "valid_max")) {
+                validMax = getVariableAttributeValue(attribute, Double.NaN);
+            } else if (StringUtils.equals(shortName, "valid_range") && attribute.getLength() == 2) {
+                validMin = getVariableAttributeValue(attribute, 0, Double.NaN);
+                validMax = getVariableAttributeValue(attribute, 1, Double.NaN);
+            } else if (StringUtils.equals(shortName, "actual_range") && attribute.getLength() == 2) {
+                actualMin = getVariableAttributeValue(attribute, 0, Double.NaN);
+                actualMax = getVariableAttributeValue(attribute, 1, Double.NaN);
+            }
+        }
+        // 填充维度
+        List<Dimension> dimensions = variable.getDimensions();
+        Map<String, Dimension> dimensionMap = new HashMap<>();
+        List<String> dimensionList = new ArrayList<>();
+        for (Dimension dimension : dimensions) {
+            dimensionMap.put(dimension.getShortName(), dimension);
+            dimensionList.add(dimension.getShortName());
+        }
+        String unit = variable.getUnitsString();
+
+        // 如果unit为null或空，尝试根据变量名推断单位
+        if (unit == null || unit.trim().isEmpty()) {
+            unit = inferUnitFromVariableName(variable.getShortName());
+        }
+        return new NcVariableMetadata(variable.getShortName(), dimensionList, dimensionMap, variable.getShape(), unit,
+                fillValue, missingValue, scaleFactor, addOffset, validMin, validMax, actualMin, actualMax);
+    }
+
     /**
      * 获取真实的数据 数据会经历 data * scaleFactor + addOffset
      *
@@ -234,7 +252,7 @@ public class NcReader {
                 }
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("读取要素:{} 数据失败!", variable != null ? variable.getShortName() : null, e);
         }
         return null;
     }
@@ -247,22 +265,34 @@ public class NcReader {
      * @return
      */
     public static double getVariableAttributeValue(Attribute attribute, double defaultValue) {
+        return getVariableAttributeValue(attribute, 0, defaultValue);
+    }
+
+    /**
+     * 获取描述的数据信息 多值属性(如 actual_range)按下标读取
+     *
+     * @param attribute
+     * @param index
+     * @param defaultValue
+     * @return
+     */
+    public static double getVariableAttributeValue(Attribute attribute, int index, double defaultValue) {
         double value = defaultValue;
         DataType dataType = attribute.getDataType();
         if (DataType.SHORT.equals(dataType)) {
-            value = (short) attribute.getValue(0);
+            value = (short) attribute.getValue(index);
         }
         if (DataType.DOUBLE.equals(dataType)) {
-            value = (double) attribute.getValue(0);
+            value = (double) attribute.getValue(index);
         }
         if (DataType.FLOAT.equals(dataType)) {
-            value = (float) attribute.getValue(0);
+            value = (float) attribute.getValue(index);
         }
         if (DataType.INT.equals(dataType)) {
-            value = (int) attribute.getValue(0);
+            value = (int) attribute.getValue(index);
         }
         if (DataType.LONG.equals(dataType)) {
-            value = (long) attribute.getValue(0);
+            value = (long) attribute.getValue(index);
         }
         return value;
     }
@@ -276,8 +306,8 @@ public class NcReader {
      * @return
      */
     public static String getElementUnit(String variableName, String filePath) throws Exception {
-        try (NetcdfFile dataSet = NetcdfFile.open(filePath);) {
-            List<Variable> variables = dataSet.getVariables();
+        try (NcFileHandleManager.Handle handle = NcFileHandleManager.getInstance().acquire(filePath)) {
+            List<Variable> variables = handle.getNetcdfFile().getVariables();
             Variable variable = null;
             for (Variable item : variables) {
                 if (StringUtils.equals(item.getShortName(), variableName)) {
@@ -295,7 +325,7 @@ public class NcReader {
                 return result;
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("读取要素:{} 单位失败!", variableName, e);
         }
         return "";
     }
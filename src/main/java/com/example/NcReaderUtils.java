@@ -1,5 +1,7 @@
 package com.example;
 
+import lombok.extern.slf4j.Slf4j;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -16,6 +18,7 @@ import ucar.nc2.*;
 /**
  * 读取格点文件数据
  */
+@Slf4j
 public class NcReaderUtils {
 
     public static String lon = "lon";
@@ -899,7 +902,7 @@ public class NcReaderUtils {
         try {
             array = v.read();
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("读取要素:{} 数据失败!", elName, e);
         }
 
         if (array == null) {
@@ -981,64 +984,45 @@ public class NcReaderUtils {
 
     /**
      * 解析多组 文件重名问题
+     * 文件通过句柄管理打开 返回前释放 返回的要素只能使用元数据(名称、维度、属性)
+     * 需要读取数据时使用 getDatasMapGroup(Handle) 在持有句柄期间读取
      *
      * @param filePath 解析文件地址
      * @return
      */
     public static List<Map<String, Object>> getDatasMapGroup(String filePath) {
-        ArrayList<Map<String, Object>> groupMaps = new ArrayList<>();
+        deleteIndexFiles(filePath);
+        try (NcFileHandleManager.Handle handle = NcFileHandleManager.getInstance().acquire(filePath)) {
+            return getDatasMapGroup(handle);
+        } catch (IOException e) {
+            log.error("读取nc文件失败:{}", filePath, e);
+            return new ArrayList<>();
+        }
+    }
 
-        try {
-            if (filePath.endsWith("gbx9") || filePath.endsWith("ncx3")) {
-                new File(filePath).delete();
-            }
-            boolean del = new File(filePath + ".ncx3").delete();
-            boolean del2 = new File(filePath + ".gbx9").delete();
-
-            NetcdfFile dataset = NetcdfFile.open(filePath);
-
-            List<Group> groups = dataset.getRootGroup().getGroups();
-            if (groups.size() > 0) {
-                for (Group group : groups) {
-                    Map<String, Object> result = new ConcurrentHashMap<String, Object>();
-                    List<Variable> variables = group.getVariables();
-                    for (Variable v : variables) {
-                        // 获取文件中每一个要素 的结构并且存到map中
-                        String name = v.getShortName().toLowerCase();
-                        result.put(name, v);
-                    }
-                    groupMaps.add(result);
-                }
-            } else {
+    /**
+     * 解析多组 返回的要素在句柄释放前可以读取数据
+     *
+     * @param handle 调用方持有的句柄
+     * @return
+     */
+    public static List<Map<String, Object>> getDatasMapGroup(NcFileHandleManager.Handle handle) {
+        ArrayList<Map<String, Object>> groupMaps = new ArrayList<>();
+        NetcdfFile dataset = handle.getNetcdfFile();
+        List<Group> groups = dataset.getRootGroup().getGroups();
+        if (groups.size() > 0) {
+            for (Group group : groups) {
                 Map<String, Object> result = new ConcurrentHashMap<String, Object>();
-                List<Variable> variables = dataset.getVariables();
-
+                List<Variable> variables = group.getVariables();
                 for (Variable v : variables) {
                     // 获取文件中每一个要素 的结构并且存到map中
                     String name = v.getShortName().toLowerCase();
                     result.put(name, v);
                 }
+                groupMaps.add(result);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return groupMaps;
-        }
-        return groupMaps;
-    }
-
-
-    public static Map<String, Object> getDatasMap(String filePath) {
-        Map<String, Object> result = new ConcurrentHashMap<String, Object>();
-        try {
-            if (filePath.endsWith("gbx9") || filePath.endsWith("ncx3")) {
-                new File(filePath).delete();
-            }
-            boolean del = new File(filePath + ".ncx3").delete();
-            boolean del2 = new File(filePath + ".gbx9").delete();
-
-            NetcdfFile dataset = NetcdfFile.open(filePath);
-
-
+        } else {
+            Map<String, Object> result = new ConcurrentHashMap<String, Object>();
             List<Variable> variables = dataset.getVariables();
 
             for (Variable v : variables) {
@@ -1046,16 +1030,57 @@ public class NcReaderUtils {
                 String name = v.getShortName().toLowerCase();
                 result.put(name, v);
             }
+        }
+        return groupMaps;
+    }
 
+    /**
+     * 要素列表转map key为小写的shortname
+     * 文件通过句柄管理打开 返回前释放 返回的要素只能使用元数据(名称、维度、属性)
+     * 需要读取数据时使用 getDatasMap(Handle) 在持有句柄期间读取
+     *
+     * @param filePath 解析文件地址
+     * @return
+     */
+    public static Map<String, Object> getDatasMap(String filePath) {
+        deleteIndexFiles(filePath);
+        try (NcFileHandleManager.Handle handle = NcFileHandleManager.getInstance().acquire(filePath)) {
+            return getDatasMap(handle);
         } catch (IOException e) {
-            e.printStackTrace();
-            return result;
+            log.error("读取nc文件失败:{}", filePath, e);
+            return new ConcurrentHashMap<String, Object>();
         }
+    }
 
+    /**
+     * 要素列表转map 返回的要素在句柄释放前可以读取数据
+     *
+     * @param handle 调用方持有的句柄
+     * @return
+     */
+    public static Map<String, Object> getDatasMap(NcFileHandleManager.Handle handle) {
+        Map<String, Object> result = new ConcurrentHashMap<String, Object>();
+        List<Variable> variables = handle.getNetcdfFile().getVariables();
 
+        for (Variable v : variables) {
+            // 获取文件中每一个要素 的结构并且存到map中
+            String name = v.getShortName().toLowerCase();
+            result.put(name, v);
+        }
         return result;
     }
 
+    /**
+     * 删除 GRIB 索引文件 打开时重新生成
+     */
+    private static void deleteIndexFiles(String filePath) {
+        if (filePath.endsWith("gbx9") || filePath.endsWith("ncx3")) {
+            new File(filePath).delete();
+        }
+        new File(filePath + ".ncx3").delete();
+        new File(filePath + ".gbx9").delete();
+    }
+
     public static String getElementUnit(Map<String, Object> datasMap, String elName) {
         String prefix = "";
 //		if(elName.startsWith("xxx"))
@@ -1284,7 +1309,7 @@ public class NcReaderUtils {
             try {
                 result = v.read();
             } catch (IOException e1) {
-                e1.printStackTrace();
+                log.error("读取要素:{} 数据失败!", elName, e1);
             }
             return result;
         }
@@ -1558,9 +1583,9 @@ public class NcReaderUtils {
             result = toDoubleArray(objArray, rank, dataMap, elName, layer, missValue);
 
         } catch (InvalidRangeException e) {
-            e.printStackTrace();
+            log.error("读取要素:{} 数据失败!", elName, e);
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("读取要素:{} 数据失败!", elName, e);
         }
         for (double[][] doubles : result) {
             result2 = doubles;
@@ -5,7 +5,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.helpers.MessageFormatter;
 import ucar.nc2.Dimension;
-import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
 
 import java.io.File;
@@ -14,7 +13,6 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @Author: Gengfangdong
@@ -28,6 +26,14 @@ public class NcToPngUtils {
 
     static final long SECONDS_FROM_1900_TO_1970 = 2208988800L;
     public static int minRank = 2;
+    /**
+     * 是否使用要素属性中的值域作为色标范围
+     */
+    public static volatile boolean rangeFromAttributes = false;
+    /**
+     * 要素固定色标范围表
+     */
+    public static volatile ElementRangeTable elementRangeTable = ElementRangeTable.EMPTY;
     private static final String[] WIND_U_PREFIXES = new String[]{
             "uu", "u10", "UU", "u_", "U_", "u", "U", "U_component_of_wind_isobaric"
     };
@@ -57,29 +63,30 @@ public class NcToPngUtils {
 
     public static List<NcBeanModel> ncToPng(String filePath, String pngPath, Set<String> filterKeywords) {
         List<NcBeanModel> ncBeanModelList = new ArrayList<>();
-        try (NetcdfFile netcdfFile = NetcdfFile.open(filePath)) {
+        try (NcFileHandleManager.Handle handle = NcFileHandleManager.getInstance().acquire(filePath)) {
             // 获取要素
-            List<Variable> variables = netcdfFile.getVariables();
+            List<Variable> variables = handle.getNetcdfFile().getVariables();
             Map<String, Variable> variableMap = NcReader.variablesTranToShortNameVariableMap(variables);
             for (Map.Entry<String, Variable> variableEntry : variableMap.entrySet()) {
                 // 简单过滤一下
                 Variable variable = variableEntry.getValue();
                 if (variable.getRank() >= minRank && !StringUtils.equalsAnyIgnoreCase(variable.getShortName(), "time")) {
                     if (shouldSkipVariable(variable.getShortName(), filterKeywords)) {
-                        log.info("???????????��??????:{}", variable.getShortName());
+                        log.info("根据过滤关键词跳过要素:{}", variable.getShortName());
                         continue;
                     }
                     try {
-                        ncBeanModelList.addAll(variableToPng(pngPath, variable, variableMap, filterKeywords));
+                        ncBeanModelList.addAll(variableToPng(filePath, pngPath, variable, variableMap, filterKeywords));
                     } catch (Exception e) {
-                        e.printStackTrace();
-                        log.error("要素:{},出图失败!", variable.getShortName());
+                        log.error("要素:{},出图失败!", variable.getShortName(), e);
+                        PipelineMetrics.recordFailure();
                     }
                 }
             }
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("nc文件出图失败:{}", filePath, e);
+            PipelineMetrics.recordFailure();
         }
         return ncBeanModelList;
     }
@@ -92,18 +99,19 @@ public class NcToPngUtils {
      */
     public static List<NcBeanModel> ncToPng(String filePath, String pngPath, String variableName) {
         List<NcBeanModel> ncBeanModelList = new ArrayList<>();
-        try (NetcdfFile netcdfFile = NetcdfFile.open(filePath)) {
+        try (NcFileHandleManager.Handle handle = NcFileHandleManager.getInstance().acquire(filePath)) {
             // 获取要素
-            List<Variable> variables = netcdfFile.getVariables();
+            List<Variable> variables = handle.getNetcdfFile().getVariables();
             Map<String, Variable> variableMap = NcReader.variablesTranToShortNameVariableMap(variables);
             // 获取要读取的要素
             Variable variable = variableMap.get(variableName);
             if (variable == null) {
                 throw new RuntimeException("要素:" + variableName + "不存在");
             }
-            ncBeanModelList.addAll(variableToPng(pngPath, variable, variableMap, Collections.emptySet()));
+            ncBeanModelList.addAll(variableToPng(filePath, pngPath, variable, variableMap, Collections.emptySet()));
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("nc文件出图失败:{}", filePath, e);
+            PipelineMetrics.recordFailure();
         }
         return ncBeanModelList;
     }
@@ -111,11 +119,12 @@ public class NcToPngUtils {
     /**
      * variable 转 png
      *
+     * @param filePath    nc文件路径 用于从文件名解析日期
      * @param pngPath
      * @param variable
      * @param variableMap
      */
-    private static List<NcBeanModel> variableToPng(String pngPath, Variable variable, Map<String, Variable> variableMap, Set<String> filterKeywords) {
+    private static List<NcBeanModel> variableToPng(String filePath, String pngPath, Variable variable, Map<String, Variable> variableMap, Set<String> filterKeywords) {
         List<NcBeanModel> ncBeanModelList = new ArrayList<>();
         String variableName = variable.getShortName();
         int rank = variable.getRank();
@@ -127,129 +136,157 @@ public class NcToPngUtils {
         // 读取经纬度数据
         if (rank == minRank) {
             // 如果为 2维 的 直接转png
-            ncBeanModelList.addAll(variableToPng(variable, null, null, variableMap, pngPath, variableName, null, null, pngPath, filterKeywords));
+            ncBeanModelList.addAll(variableToPng(variable, null, null, variableMap, pngPath, variableName, null, null, filePath, filterKeywords));
         } else {
-            deepBuildDimensionData(variableMap, variable.getDimensions(), 0, new ArrayList<>(), variableName, pngPath, variable, ncBeanModelList, pngPath, filterKeywords);
+            // 先枚举所有切片 再按分块布局排序后出图
+            List<Context> slices = buildSlices(variableMap, variable, variableName);
+            for (Context slice : orderByChunkLayout(variable, slices)) {
+                try {
+                    ncBeanModelList.addAll(variableToPng(variable, slice.getOrigin(), slice.getShape(), variableMap, pngPath, slice.getNamePrefix(), slice.getLevel(), slice.getTime(), filePath, filterKeywords));
+                } catch (Exception e) {
+                    log.error("要素:{} 切片:{} 出图失败!", variableName, slice.getNamePrefix(), e);
+                    PipelineMetrics.recordFailure();
+                }
+            }
         }
         return ncBeanModelList;
     }
 
     /**
-     * 获取当前层的所有节点数据
+     * 枚举要素的所有切片 前导维度(除经纬度外的维度)按声明顺序组成里程表 最后一维变化最快
+     * 每个切片保存读取起始位置 读取大小所有切片共用
+     * 切片名称为 前缀_维度1取值_维度2取值... 时间维度格式化为日期
      *
-     * @param variableMap     要素map
-     * @param dimensionList   维度名称
-     * @param layerIndex      当前维度层 layer
-     * @param preOrg          读取起始位置
-     * @param prefix          路径前缀
-     * @param dataVariable    数据要素
-     * @param filePath        文件路径
-     * @param ncBeanModelList 存储bean
-     * @return
+     * @param variableMap  要素map 用来读取维度数据
+     * @param dataVariable 数据要素
+     * @param prefix       名称前缀
+     * @return 切片 按声明顺序
      */
-    private static void deepBuildDimensionData(Map<String, Variable> variableMap, List<Dimension> dimensionList, Integer layerIndex, List<Integer> preOrg, String prefix, String filePath, Variable dataVariable, List<NcBeanModel> ncBeanModelList, String ncFilePath, Set<String> filterKeywords) {
-        if (layerIndex >= dimensionList.size()) {
-            // 代表超过了 维度 直接返回
-            return;
-        }
-        // 获取维度名称
-        String shortName = dimensionList.get(layerIndex).getShortName();
-        Variable variable = variableMap.get(shortName);
-        double[] rasterData = null;
-        if (variable != null) {
-            // 如果要素不为空 解析数据
-            rasterData = readDimensionData(variable, false);
-        } else {
-            if (StringUtils.equalsAny(shortName, "pressure")) {
-                rasterData = new double[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18};
-            } else if (StringUtils.equalsAny(shortName, "single_lev")) {
-                rasterData = new double[]{0};
+    private static List<Context> buildSlices(Map<String, Variable> variableMap, Variable dataVariable, String prefix) {
+        List<Dimension> dimensionList = dataVariable.getDimensions();
+        int rank = dimensionList.size();
+        int leading = rank - 2;
+        // 每个前导维度的名称片段和时间
+        String[][] labels = new String[leading][];
+        double[][] values = new double[leading][];
+        Long[][] times = new Long[leading][];
+        for (int layerIndex = 0; layerIndex < leading; layerIndex++) {
+            String shortName = dimensionList.get(layerIndex).getShortName();
+            double[] rasterData = readLeadingDimensionData(variableMap, shortName);
+            if (rasterData == null) {
+                throw new RuntimeException(MessageFormatter.format("维度:{}不存在!", shortName).getMessage());
             }
-        }
-        if (rasterData == null) {
-            throw new RuntimeException(MessageFormatter.format("维度:{}不存在!", shortName).getMessage());
-        }
-        try {
-            // 每一条数据
+            values[layerIndex] = rasterData;
+            labels[layerIndex] = new String[rasterData.length];
+            times[layerIndex] = new Long[rasterData.length];
+            boolean isTime = StringUtils.equalsAnyIgnoreCase(shortName, "time")
+                    || StringUtils.equalsAnyIgnoreCase(shortName, "valid_time");
             for (int dimensionIndex = 0; dimensionIndex < rasterData.length; dimensionIndex++) {
                 double dimensionItem = rasterData[dimensionIndex];
-                // 复制list 下一层节点 读取数据的时候 前面所有层的前缀
-                List<Integer> copyPreOrg = new CopyOnWriteArrayList<>();
-                List<Integer> copyPreSha = new CopyOnWriteArrayList<>();
-                for (Integer org : preOrg) {
-                    copyPreOrg.add(org.intValue());
-                    copyPreSha.add(1);
-                }
-                copyPreOrg.add(dimensionIndex);
-                copyPreSha.add(1);
-                // 当前节点的维度前缀
-                String prefixNew = prefix + "_";
-                Long time = null;
-                if (StringUtils.equalsAnyIgnoreCase(shortName, "time")
-                        || StringUtils.equalsAnyIgnoreCase(shortName, "valid_time")) {
-                    time = new Double(dimensionItem).longValue();
-                    log.info("时间原始值:{}", time);
-                    
+                if (isTime) {
+                    Long time = new Double(dimensionItem).longValue();
+                    log.debug("时间原始值:{}", time);
+
                     // 获取时间单位属性
-                    String timeUnits = variable.findAttribute("units").toString();
-                    log.info("时间单位: {}", timeUnits);
-                    
+                    String timeUnits = variableMap.get(shortName).findAttribute("units").toString();
+                    log.debug("时间单位: {}", timeUnits);
+
                     // 解析时间单位和转换时间戳
                     Long convertedTime = convertTimeToTimestamp(time, timeUnits);
                     if (convertedTime != null) {
                         time = convertedTime;
-                        log.info("转换后时间戳: {}", time);
+                        log.debug("转换后时间戳: {}", time);
                     }
-                    
+
                     // 格式化时间为日期字符串
                     String formattedDate = formatTimeForFileName(time, timeUnits);
-                    log.info("格式化日期: {}", formattedDate);
-                    
-                    prefixNew += formattedDate;
+                    log.debug("格式化日期: {}", formattedDate);
+                    labels[layerIndex][dimensionIndex] = formattedDate;
+                    times[layerIndex][dimensionIndex] = time;
                 } else {
-                    prefixNew += String.valueOf(dimensionItem);
+                    labels[layerIndex][dimensionIndex] = String.valueOf(dimensionItem);
                 }
-                // 下一个维度的索引
-                Integer next = layerIndex + 1;
-                // 判断当层节点 这里多减1 是因为 从 0开始的
-                if (layerIndex == dimensionList.size() - 3) {
-                    try {
-                        String level = String.valueOf(dimensionItem);
-                        if (StringUtils.equals(shortName, "time")) {
-                            level = null;
-                        }
-                        ncBeanModelList.addAll(variableToPng(dataVariable, copyPreOrg, copyPreSha, variableMap, filePath, prefixNew, level, time, ncFilePath, filterKeywords));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                } else {
-                    deepBuildDimensionData(variableMap, dimensionList, next, copyPreOrg, prefixNew, filePath, dataVariable, ncBeanModelList, ncFilePath, filterKeywords);
-                }
-
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (rasterData.length == 0) {
+                return Collections.emptyList();
+            }
         }
+        // 读取大小 前导维度为1 经纬度为全部 所有切片共用
+        int[] shape = new int[rank];
+        Arrays.fill(shape, 0, leading, 1);
+        shape[rank - 2] = dimensionList.get(rank - 2).getLength();
+        shape[rank - 1] = dimensionList.get(rank - 1).getLength();
+        // 最后一个前导维度为层次 名称为 time 时没有层次
+        int leaf = leading - 1;
+        boolean leafIsTime = StringUtils.equals(dimensionList.get(leaf).getShortName(), "time");
+
+        List<Context> slices = new ArrayList<>();
+        int[] counter = new int[leading];
+        StringBuilder name = new StringBuilder();
+        while (true) {
+            name.setLength(0);
+            name.append(prefix);
+            for (int layerIndex = 0; layerIndex < leading; layerIndex++) {
+                name.append('_').append(labels[layerIndex][counter[layerIndex]]);
+            }
+            Context slice = new Context();
+            // 起始位置 经纬度维度为0
+            slice.setOrigin(Arrays.copyOf(counter, rank));
+            slice.setShape(shape);
+            slice.setNamePrefix(name.toString());
+            slice.setLevel(leafIsTime ? null : String.valueOf(values[leaf][counter[leaf]]));
+            slice.setTime(times[leaf][counter[leaf]]);
+            slices.add(slice);
+            // 里程表进位
+            int layerIndex = leaf;
+            while (layerIndex >= 0 && ++counter[layerIndex] == values[layerIndex].length) {
+                counter[layerIndex] = 0;
+                layerIndex--;
+            }
+            if (layerIndex < 0) {
+                break;
+            }
+        }
+        return slices;
+    }
 
+    /**
+     * 读取前导维度的取值 没有维度要素时使用约定的默认值
+     */
+    private static double[] readLeadingDimensionData(Map<String, Variable> variableMap, String shortName) {
+        Variable variable = variableMap.get(shortName);
+        if (variable != null) {
+            // 如果要素不为空 解析数据
+            return readDimensionData(variable, false);
+        }
+        if (StringUtils.equalsAny(shortName, "pressure")) {
+            return new double[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18};
+        } else if (StringUtils.equalsAny(shortName, "single_lev")) {
+            return new double[]{0};
+        }
+        return null;
     }
 
     /**
      * @param variable    要解析的要素
-     * @param org         起始数据 int数组
-     * @param sha         读取要素大小 int 数组
+     * @param org         读取起始位置 为空时读取全部
+     * @param sha         读取大小 为空时读取全部
      * @param variableMap 要素map 用来读取纬度和经度
      * @param pngPath     要生成的png 路径
      * @param namePrefix  要生成的png 前缀 用于递归 初始为 文件名
      * @param level       层次
+     * @param ncFilePath  nc文件路径 从文件名解析日期 与写库(data_png_table.date)使用同一个解析结果
      * @return
      */
-    private static List<NcBeanModel> variableToPng(Variable variable, List<Integer> org, List<Integer> sha, Map<String, Variable> variableMap, String pngPath, String namePrefix, String level, Long time, String ncFilePath, Set<String> filterKeywords) {
+    private static List<NcBeanModel> variableToPng(Variable variable, int[] org, int[] sha, Map<String, Variable> variableMap, String pngPath, String namePrefix, String level, Long time, String ncFilePath, Set<String> filterKeywords) {
         String variableName = variable.getShortName();
         // 获取面的数据
         NcDataModel ncDataModel = getFaceData(variable, org, sha);
         if (ncDataModel == null) {
             throw new RuntimeException("要素:" + variableName + "读取失败!");
         }
+        ncDataModel.setRangeFromAttributes(rangeFromAttributes)
+                .setFixedRange(elementRangeTable.lookup(variableName, level));
 
         // 代码补丁----start
         // 温度类
@@ -294,10 +331,10 @@ public class NcToPngUtils {
         List<NcBeanModel> ncBeanModelList = new ArrayList<>();
         String timeStr = "_" + new Date().getTime();
         
-        // levelĬ��ֵ���������levelΪnull��գ�����Ĭ��ֵΪ"1000"
-        String finalLevel = (level == null || level.trim().isEmpty()) ? "1000" : level;
+        // 没有层次时为 null 由写库时按文件名规则补充
+        String finalLevel = (level == null || level.trim().isEmpty()) ? null : level;
         
-        // ����ʱ�䴦��������ʹ���ļ����е����ڣ��ٽ��NC�ļ��е�ʱ����Ϣ
+        // 智能时间处理：优先使用文件名中的日期，再结合NC文件中的时间信息
         Long finalTime = intelligentTimeProcessing(time, ncFilePath);
         
         boolean isU10 = isTargetWindVariable(variableName, "u10");
@@ -404,18 +441,55 @@ public class NcToPngUtils {
     @Data
     public static class Context {
         Variable variable;
-        List<Integer> org;
-        List<Integer> sha;
+        /**
+         * 读取起始位置 与要素维度数相同
+         */
+        int[] origin;
+        /**
+         * 读取大小 切片之间共用 不可修改
+         */
+        int[] shape;
         Map<String, Variable> variableMap;
         String pngPath;
         String namePrefix;
         String level;
+        Long time;
         Boolean isWind;
         Variable uVariable;
         Variable vVariable;
 
     }
 
+    /**
+     * 按分块布局排列切片 同一个分块内的切片排在一起
+     * 例如分块为 (24, 1, lat, lon) 时 按声明顺序(时间在外 层次在内)读取 相邻切片分属不同分块
+     * 按分块分组后 每个分块只需读取解压一次(见 NcChunkCache) 同一分块内保持原有顺序
+     *
+     * @param variable 要素
+     * @param slices   按声明顺序枚举的切片
+     * @return 排序后的切片 非分块要素原样返回
+     */
+    static List<Context> orderByChunkLayout(Variable variable, List<Context> slices) {
+        int[] chunkSizes = NcChunkCache.getChunkSizes(variable);
+        if (chunkSizes == null || slices.size() < 2) {
+            return slices;
+        }
+        List<Context> ordered = new ArrayList<>(slices);
+        // List.sort 为稳定排序
+        ordered.sort((a, b) -> {
+            int[] orgA = a.getOrigin();
+            int[] orgB = b.getOrigin();
+            for (int i = 0; i < orgA.length - 2 && i < chunkSizes.length; i++) {
+                int compare = Integer.compare(orgA[i] / chunkSizes[i], orgB[i] / chunkSizes[i]);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return 0;
+        });
+        return ordered;
+    }
+
     /**
      * 获取面数据
      *
@@ -424,32 +498,12 @@ public class NcToPngUtils {
      * @param sha      尺寸
      * @return
      */
-    private static NcDataModel getFaceData(Variable variable, List<Integer> org, List<Integer> sha) {
+    private static NcDataModel getFaceData(Variable variable, int[] org, int[] sha) {
         // 如果都为空 代表直接读取数据
-        if (org == null && sha == null) {
+        if (org == null || sha == null) {
             return NcReader.readNcDataTrue(variable, null, null);
         }
-        if (org == null) {
-            org = new ArrayList<>();
-        }
-        if (sha == null) {
-            sha = new ArrayList<>();
-        }
-        List<Dimension> dimensionList = variable.getDimensions();
-        // 获取最后两个维度的rank
-        Dimension dimensionLast = dimensionList.get(dimensionList.size() - 1);
-        Dimension dimensionPre = dimensionList.get(dimensionList.size() - 2);
-
-        // step 1、增加 为 维度或者经度的起始和偏移
-        Integer[] orgInt = org.toArray(new Integer[org.size() + 2]);
-        Integer[] shaInt = sha.toArray(new Integer[sha.size() + 2]);
-        orgInt[orgInt.length - 2] = 0;
-        orgInt[orgInt.length - 1] = 0;
-        shaInt[shaInt.length - 2] = dimensionPre.getLength();
-        shaInt[shaInt.length - 1] = dimensionLast.getLength();
-
-        // step 2、读取数据
-        return NcReader.readNcDataTrue(variable, NumberUtils.convert2IntArray(orgInt), NumberUtils.convert2IntArray(shaInt));
+        return NcReader.readNcDataTrue(variable, org, sha);
     }
 
     /**
@@ -459,6 +513,11 @@ public class NcToPngUtils {
      * @return
      */
     public static double[] readDimensionData(Variable variable, Boolean row) {
+        // 坐标数据在同一个文件内不变 每个切片都会用到 从元数据缓存中获取
+        return NcMetadataCache.getCoordinateValues(variable, Boolean.TRUE.equals(row), () -> readDimensionDataFromFile(variable, row));
+    }
+
+    private static double[] readDimensionDataFromFile(Variable variable, Boolean row) {
         NcDataModel faceData = getFaceData(variable, null, null);
         if (faceData.getRank() == 1) {
             return faceData.convertDoubleArray();
@@ -627,8 +686,8 @@ public class NcToPngUtils {
      */
     private static Long intelligentTimeProcessing(Long ncTime, String ncFilePath) {
         try {
-            // 1. 从文件名中提取日期
-            String dateFromFileName = extractDateFromFilePath(ncFilePath);
+            // 1. 从文件名中提取日期 与写库使用同一个解析结果
+            String dateFromFileName = FileNameMetadataParser.parse(ncFilePath).getDate();
             
             if (dateFromFileName != null) {
                 // 文件名中有日期，优先使用
@@ -665,69 +724,6 @@ public class NcToPngUtils {
         }
     }
     
-    /**
-     * 从文件路径中提取日期
-     * @param filePath 文件路径
-     * @return YYYYMMDD 格式的日期字符串
-     */
-    private static String extractDateFromFilePath(String filePath) {
-        if (filePath == null || filePath.trim().isEmpty()) {
-            return null;
-        }
-        
-        try {
-            // 获取文件名
-            String fileName = filePath;
-            int lastSlash = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
-            if (lastSlash >= 0) {
-                fileName = filePath.substring(lastSlash + 1);
-            }
-            
-            // 查找8位数字的日期格式（YYYYMMDD）
-            java.util.regex.Pattern datePattern = java.util.regex.Pattern.compile("(\\d{8})");
-            java.util.regex.Matcher matcher = datePattern.matcher(fileName);
-            
-            while (matcher.find()) {
-                String dateStr = matcher.group(1);
-                // 验证是否是合理的日期
-                if (isValidDate(dateStr)) {
-                    return dateStr;
-                }
-            }
-            
-            return null;
-            
-        } catch (Exception e) {
-            log.error("从文件路径提取日期失败: {}", e.getMessage());
-            return null;
-        }
-    }
-    
-    /**
-     * 验证日期字符串是否合理
-     * @param dateStr YYYYMMDD格式的日期字符串
-     * @return 是否合理
-     */
-    private static boolean isValidDate(String dateStr) {
-        if (dateStr == null || dateStr.length() != 8) {
-            return false;
-        }
-        
-        try {
-            int year = Integer.parseInt(dateStr.substring(0, 4));
-            int month = Integer.parseInt(dateStr.substring(4, 6));
-            int day = Integer.parseInt(dateStr.substring(6, 8));
-            
-            // 简单验证
-            return year >= 1900 && year <= 2100 && 
-                   month >= 1 && month <= 12 && 
-                   day >= 1 && day <= 31;
-                   
-        } catch (NumberFormatException e) {
-            return false;
-        }
-    }
-    
     /**
      * 将YYYYMMDD格式的日期转换为时间戳
      * @param dateStr YYYYMMDD格式的日期字符串
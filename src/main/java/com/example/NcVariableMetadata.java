@@ -0,0 +1,155 @@
+package com.example;
+
+import ucar.ma2.Array;
+import ucar.nc2.Dimension;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 要素元数据 文件头中与出图相关的信息
+ * 维度、单位、打包属性(_FillValue / missing_value / scale_factor / add_offset)、值域 以及经纬度维度的位置
+ * 同一个文件只解析一次 由 NcMetadataCache 缓存 不可修改
+ */
+public class NcVariableMetadata {
+
+    private final String shortName;
+    private final int rank;
+    private final List<String> dimensionList;
+    private final Map<String, Dimension> dimensionMap;
+    private final int[] shape;
+    private final String unit;
+    private final double fillValue;
+    private final double missingValue;
+    private final double scaleFactor;
+    private final double addOffset;
+    private final Double validMin;
+    private final Double validMax;
+    private final Double actualMin;
+    private final Double actualMax;
+    /**
+     * 经纬度维度 见 NcDataModel.checkReversal
+     */
+    private final String latName;
+    private final String lonName;
+    private final boolean needReversal;
+
+    NcVariableMetadata(String shortName, List<String> dimensionList, Map<String, Dimension> dimensionMap, int[] shape, String unit,
+                       double fillValue, double missingValue, double scaleFactor, double addOffset,
+                       Double validMin, Double validMax, Double actualMin, Double actualMax) {
+        this.shortName = shortName;
+        this.rank = shape.length;
+        this.dimensionList = Collections.unmodifiableList(dimensionList);
+        this.dimensionMap = Collections.unmodifiableMap(dimensionMap);
+        this.shape = shape;
+        this.unit = unit;
+        this.fillValue = fillValue;
+        this.missingValue = missingValue;
+        this.scaleFactor = scaleFactor;
+        this.addOffset = addOffset;
+        this.validMin = validMin;
+        this.validMax = validMax;
+        this.actualMin = actualMin;
+        this.actualMax = actualMax;
+        // 经纬度位置只和维度名称有关 解析一次
+        NcDataModel probe = new NcDataModel().setDimensionList(this.dimensionList);
+        probe.checkReversal();
+        this.latName = probe.getLatName();
+        this.lonName = probe.getLonName();
+        this.needReversal = probe.isNeedReversal();
+    }
+
+    /**
+     * 使用元数据和读取到的数据构建模型 不再访问文件头
+     *
+     * @param array 数据
+     * @return
+     */
+    public NcDataModel newDataModel(Array array) {
+        return new NcDataModel().setDataArray(array)
+                .setUnit(unit)
+                .setAddOffset(addOffset)
+                .setDimensionList(dimensionList)
+                .setRank(rank)
+                .setFillValue(fillValue)
+                .setMissingValue(missingValue)
+                .setValidRange(validMin, validMax)
+                .setActualRange(actualMin, actualMax)
+                .setScaleFactor(scaleFactor)
+                .setDimensionMap(dimensionMap)
+                .setVariableName(shortName)
+                .setCoordinateMapping(latName, lonName, needReversal);
+    }
+
+    public String getShortName() {
+        return shortName;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public List<String> getDimensionList() {
+        return dimensionList;
+    }
+
+    public Map<String, Dimension> getDimensionMap() {
+        return dimensionMap;
+    }
+
+    /**
+     * 各维度长度
+     */
+    public int[] getShape() {
+        return shape.clone();
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public double getFillValue() {
+        return fillValue;
+    }
+
+    public double getMissingValue() {
+        return missingValue;
+    }
+
+    public double getScaleFactor() {
+        return scaleFactor;
+    }
+
+    public double getAddOffset() {
+        return addOffset;
+    }
+
+    public Double getValidMin() {
+        return validMin;
+    }
+
+    public Double getValidMax() {
+        return validMax;
+    }
+
+    public Double getActualMin() {
+        return actualMin;
+    }
+
+    public Double getActualMax() {
+        return actualMax;
+    }
+
+    public String getLatName() {
+        return latName;
+    }
+
+    public String getLonName() {
+        return lonName;
+    }
+
+    public boolean isNeedReversal() {
+        return needReversal;
+    }
+}
@@ -17,9 +17,92 @@ import java.util.Objects;
  */
 public class NumberUtils {
 
-    public static final Double inputInvalidValue = -9999.0;
+    public static final double inputInvalidValue = -9999.0;
 
-    public static final Double inputFilledValue = -99999.0;
+    public static final double inputFilledValue = -99999.0;
+
+    /**
+     * 常见无效值下界 -999 -9999 -99999 等都小于该值
+     */
+    public static final double INVALID_LOW = -998;
+
+    /**
+     * 常见无效值上界 999999 以及更大的值
+     */
+    public static final double INVALID_HIGH = 999999;
+
+    /**
+     * 单独出现的无效值 9999
+     */
+    public static final double INVALID_NINES = 9999;
+
+    /**
+     * 是否为约定的无效值(哨兵值)
+     * 使用非短路运算 没有分支 便于 JIT 向量化
+     *
+     * @param value 解包后的值
+     * @return
+     */
+    public static boolean isSentinel(double value) {
+        return value <= INVALID_LOW | value == INVALID_NINES | value >= INVALID_HIGH;
+    }
+
+    /**
+     * 写png接口(PngUtils.writeDataToPngFromLeft* writeUVDataToPng* 一维和二维)原有的无效值判断
+     * -999 -9999 9999 大于等于999999 以及 NaN 不修改调用方的数组
+     *
+     * @param value 数据
+     * @return
+     */
+    public static boolean isInvalidMarker(double value) {
+        return value == -999 | value == inputInvalidValue | value == INVALID_NINES | value >= INVALID_HIGH | value != value;
+    }
+
+    /**
+     * 解包并屏蔽无效值 无效值统一替换为 NaN
+     * 无效值包括 填充值、缺测值、有效范围之外的打包值 以及解包后的哨兵值
+     * 屏蔽之后的统计和量化只需要判断 NaN
+     *
+     * @param data         原始数据 原地修改
+     * @param scaleFactor  scale_factor
+     * @param addOffset    add_offset
+     * @param fillValue    填充值 没有时为 Double.MAX_VALUE(见 NcDataModel.fillValue)
+     * @param missingValue 缺测值 没有时为 NaN
+     * @param validLow     有效范围下限(打包值) 没有时为负无穷
+     * @param validHigh    有效范围上限(打包值) 没有时为正无穷
+     */
+    public static void unpackAndMask(double[] data, double scaleFactor, double addOffset, double fillValue, double missingValue, double validLow, double validHigh) {
+        for (int i = 0; i < data.length; i++) {
+            double raw = data[i];
+            double value = raw * scaleFactor + addOffset;
+            boolean invalid = raw == fillValue | raw == missingValue | raw < validLow | raw > validHigh
+                    | value == fillValue | isSentinel(value);
+            data[i] = invalid ? Double.NaN : value;
+        }
+    }
+
+    /**
+     * 屏蔽已解包数据中的无效值 无效值统一替换为 NaN
+     *
+     * @param data 数据 原地修改
+     */
+    public static void maskInvalid(double[] data) {
+        for (int i = 0; i < data.length; i++) {
+            double value = data[i];
+            data[i] = isSentinel(value) ? Double.NaN : value;
+        }
+    }
+
+    /**
+     * 屏蔽已解包的二维数据中的无效值
+     *
+     * @param data 数据 原地修改
+     */
+    public static void maskInvalid(double[][] data) {
+        for (double[] row : data) {
+            maskInvalid(row);
+        }
+    }
 
     /**
      * 查找指定值在数组中的第一个位置
@@ -827,7 +910,6 @@ public class NumberUtils {
     public static double[] splitByIntervalFromMinToMax(double min, double max, double interval) {
         int size = (int) ((max - min) / interval);
         double[] data = new double[size + 1];
-        System.out.println(size + 1);
         for (int i = 0; i < size + 1; i++) {
             data[i] = i * interval + min;
         }
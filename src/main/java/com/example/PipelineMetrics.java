@@ -0,0 +1,279 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 转换流程各阶段耗时统计
+ * 每个阶段按 要素、格点大小 分别统计直方图(固定桶 LongAdder 计数 无锁) 通过 MetricsServer 以 Prometheus 文本格式输出
+ * 同时在当前线程上累计单个文件各阶段的耗时 文件处理完成后输出一行汇总
+ * <p>
+ * 用法:
+ * long start = PipelineMetrics.start();
+ * ...
+ * PipelineMetrics.record(PipelineMetrics.Stage.READ, element, grid, start);
+ */
+@Slf4j
+public class PipelineMetrics {
+
+    /**
+     * 直方图桶上限(秒)
+     */
+    private static final double[] BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+    /**
+     * 标签组合上限 超过后要素名记为 other 避免异常文件名导致指标无限增长
+     */
+    private static final int MAX_SERIES = 2000;
+
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<FileTimings> CURRENT_FILE = new ThreadLocal<>();
+
+    private static volatile boolean enabled = true;
+
+    private static volatile FileListener fileListener;
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * 1e9);
+        }
+    }
+
+    /**
+     * 流程阶段
+     */
+    public enum Stage {
+        OPEN("nc_open"),
+        READ("variable_read"),
+        CONVERT("convert"),
+        PNG("png_encode"),
+        JSON("json_write"),
+        /**
+         * 转换线程追加转换记录(写入本地记录文件)
+         */
+        CATALOG("catalog_append"),
+        /**
+         * 写入线程写入数据库 每批一次 批量写入失败逐条写入时每条一次
+         */
+        DB("db_insert"),
+        FILE("file_total");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 单个文件处理完成的回调 在处理文件的线程上调用 failures 为出图失败的次数(要素、切片或整个文件)
+     */
+    public interface FileListener {
+        void onFile(String file, long nanos, int images, int failures);
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static void setFileListener(FileListener listener) {
+        fileListener = listener;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        PipelineMetrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计时开始
+     *
+     * @return 当前纳秒时间 关闭统计时返回0
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param stage   阶段
+     * @param element 要素名 可以为空
+     * @param grid    格点大小 例如 721x1440 可以为空
+     * @param start   start() 的返回值
+     */
+    public static void record(Stage stage, String element, String grid, long start) {
+        if (!enabled || start == 0L) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        histogram(stage, element, grid).observe(nanos);
+        FileTimings timings = CURRENT_FILE.get();
+        if (timings != null) {
+            timings.nanos[stage.ordinal()] += nanos;
+        }
+    }
+
+    /**
+     * 格点大小标签
+     */
+    public static String grid(int width, int height) {
+        return width + "x" + height;
+    }
+
+    /**
+     * 开始统计当前线程处理的文件
+     */
+    public static void beginFile() {
+        if (enabled) {
+            CURRENT_FILE.set(new FileTimings(System.nanoTime()));
+        }
+    }
+
+    /**
+     * 记录当前文件的一次出图失败 异常被捕获后处理继续时调用
+     */
+    public static void recordFailure() {
+        FileTimings timings = CURRENT_FILE.get();
+        if (timings != null) {
+            timings.failures++;
+        }
+    }
+
+    /**
+     * 结束当前文件的统计 记录文件总耗时并输出一行汇总
+     *
+     * @param file   文件(相对路径)
+     * @param images 生成的图片数
+     */
+    public static void endFile(String file, int images) {
+        FileTimings timings = CURRENT_FILE.get();
+        if (timings == null) {
+            return;
+        }
+        CURRENT_FILE.remove();
+        record(Stage.FILE, null, null, timings.start);
+        long total = System.nanoTime() - timings.start;
+        log.info("文件耗时 {} 共{}ms 图片{}个 open={}ms read={}ms convert={}ms png={}ms json={}ms catalog={}ms",
+                file, millis(total), images,
+                millis(timings.nanos[Stage.OPEN.ordinal()]), millis(timings.nanos[Stage.READ.ordinal()]),
+                millis(timings.nanos[Stage.CONVERT.ordinal()]), millis(timings.nanos[Stage.PNG.ordinal()]),
+                millis(timings.nanos[Stage.JSON.ordinal()]), millis(timings.nanos[Stage.CATALOG.ordinal()]));
+        FileListener listener = fileListener;
+        if (listener != null) {
+            listener.onFile(file, total, images, timings.failures);
+        }
+    }
+
+    public static void clear() {
+        HISTOGRAMS.clear();
+    }
+
+    /**
+     * 以 Prometheus 文本格式输出
+     *
+     * @param out 输出
+     */
+    public static void writePrometheus(StringBuilder out) {
+        out.append("# HELP nc_pipeline_stage_seconds 转换流程各阶段耗时\n");
+        out.append("# TYPE nc_pipeline_stage_seconds histogram\n");
+        List<Map.Entry<String, Histogram>> entries = new ArrayList<>(HISTOGRAMS.entrySet());
+        Collections.sort(entries, (a, b) -> a.getKey().compareTo(b.getKey()));
+        for (Map.Entry<String, Histogram> entry : entries) {
+            Histogram histogram = entry.getValue();
+            String labels = histogram.labels;
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                out.append("nc_pipeline_stage_seconds_bucket{").append(labels).append(",le=\"").append(formatDouble(BUCKETS[i])).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            long count = cumulative + histogram.buckets[BUCKETS.length].sum();
+            out.append("nc_pipeline_stage_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+            out.append("nc_pipeline_stage_seconds_sum{").append(labels).append("} ").append(formatDouble(histogram.sumNanos.sum() / 1e9)).append('\n');
+            out.append("nc_pipeline_stage_seconds_count{").append(labels).append("} ").append(count).append('\n');
+        }
+    }
+
+    private static Histogram histogram(Stage stage, String element, String grid) {
+        String elementLabel = element != null ? element : "";
+        String gridLabel = grid != null ? grid : "";
+        String key = stage.label + '|' + elementLabel + '|' + gridLabel;
+        Histogram histogram = HISTOGRAMS.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (HISTOGRAMS.size() >= MAX_SERIES) {
+            elementLabel = "other";
+            key = stage.label + '|' + elementLabel + '|' + gridLabel;
+        }
+        String label = elementLabel;
+        return HISTOGRAMS.computeIfAbsent(key, k -> new Histogram(stage.label, label, gridLabel));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String formatDouble(double value) {
+        return Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Histogram {
+        private final String labels;
+        /**
+         * 最后一个为超过最大桶的计数
+         */
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(String stage, String element, String grid) {
+            this.labels = "stage=\"" + stage + "\",element=\"" + escape(element) + "\",grid=\"" + escape(grid) + "\"";
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void observe(long nanos) {
+            int index = 0;
+            while (index < BUCKET_NANOS.length && nanos > BUCKET_NANOS[index]) {
+                index++;
+            }
+            buckets[index].increment();
+            sumNanos.add(nanos);
+        }
+    }
+
+    /**
+     * 单个文件各阶段的累计耗时 只在处理该文件的线程上访问
+     */
+    private static final class FileTimings {
+        private final long start;
+        private final long[] nanos = new long[Stage.values().length];
+        private int failures;
+
+        private FileTimings(long start) {
+            this.start = start;
+        }
+    }
+}
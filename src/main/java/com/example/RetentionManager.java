@@ -0,0 +1,514 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 旧数据清理 按保留策略定时删除过期的图片、json和data_png_table记录
+ * 1. 分区表中整月过期的分区 删除文件后 DETACH 并 DROP
+ * 2. 按规则批量查询过期记录 删除文件后按ID批量删除记录
+ * 3. 开启 retention.delete.duplicates 时 同一个nc文件多次转换生成的同一张图 只保留最后一次转换的记录和文件
+ * 4. 宽限时间大于0时 输出目录中没有对应记录的图片和json(孤立文件) 超过宽限时间后删除
+ * 使用单独的数据库连接和最低优先级的线程 删除文件按每秒上限限速 不影响转换
+ * file_conversion_records 不清理 删除后对应的nc文件会被重新转换
+ */
+@Slf4j
+public class RetentionManager {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    /**
+     * 每次查询的记录数 = 批大小 * BATCHES_PER_QUERY 避免每批都扫描一次表
+     */
+    private static final int BATCHES_PER_QUERY = 100;
+    /**
+     * 雪花ID中的生成时间相差不超过该毫秒数的记录视为同一次转换
+     */
+    private static final long RUN_GAP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final ConfigManager configManager;
+    private final RetentionRules rules;
+    private final BooleanSupplier catalogSynced;
+    private final String table;
+    private final DataPngPartitions partitions;
+    private final int batchSize;
+    private final long intervalHours;
+    private final long orphanGraceMillis;
+    private final boolean deleteDuplicates;
+    /**
+     * 删除两个文件之间的最小间隔(纳秒) 0 不限速
+     */
+    private final long nanosPerFile;
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean running = true;
+    private long nextDeleteNanos;
+
+    private long deletedRows;
+    private long deletedFiles;
+    private long droppedPartitions;
+    private long orphanFiles;
+    /**
+     * data_png_table 中最早的入库时间 没有记录时为 Long.MAX_VALUE
+     */
+    private long catalogStart;
+
+    /**
+     * @param catalogSynced 转换记录是否都已写入数据库 未写入时不清理孤立文件
+     */
+    public RetentionManager(ConfigManager configManager, RetentionRules rules, BooleanSupplier catalogSynced) {
+        this.configManager = configManager;
+        this.rules = rules;
+        this.catalogSynced = catalogSynced;
+        this.table = configManager.getDbSchema() + "." + DataPngPartitions.TABLE;
+        this.partitions = new DataPngPartitions(configManager.getDbSchema(), 0);
+        this.batchSize = Math.max(1, configManager.getRetentionBatchSize());
+        this.intervalHours = Math.max(1, configManager.getRetentionIntervalHours());
+        this.orphanGraceMillis = Math.max(0, configManager.getRetentionOrphanGraceHours()) * 3600_000L;
+        this.deleteDuplicates = configManager.isRetentionDeleteDuplicates();
+        int filesPerSecond = configManager.getRetentionMaxFilesPerSecond();
+        this.nanosPerFile = filesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / filesPerSecond : 0;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * 启动后延迟一个检查周期再执行第一次 之后每隔 intervalHours 执行一次
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("旧数据清理异常: {}", e.getMessage(), e);
+            }
+        }, 1, intervalHours * 60, TimeUnit.MINUTES);
+        log.info("旧数据清理已启动 每 {} 小时执行一次 规则 {} 条", intervalHours, rules.getRules().size());
+    }
+
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 执行一次清理
+     */
+    public void runOnce() throws SQLException, InterruptedException {
+        if (rules.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        deletedRows = 0;
+        deletedFiles = 0;
+        droppedPartitions = 0;
+        orphanFiles = 0;
+        nextDeleteNanos = System.nanoTime();
+        try (Connection connection = DriverManager.getConnection(
+                configManager.getDbUrl(), configManager.getDbUser(), configManager.getDbPassword())) {
+            if (partitions.isPartitioned(connection)) {
+                dropExpiredPartitions(connection);
+            }
+            for (int i = 0; i < rules.getRules().size() && running; i++) {
+                deleteExpired(connection, i);
+            }
+            if (running && deleteDuplicates) {
+                deleteDuplicates(connection);
+            }
+            if (running && orphanGraceMillis > 0) {
+                if (catalogSynced.getAsBoolean()) {
+                    sweepOrphans(connection);
+                } else {
+                    log.info("还有转换记录未写入数据库 本次不清理孤立文件");
+                }
+            }
+        }
+        log.info("旧数据清理完成 删除记录 {} 条 分区 {} 个 文件 {} 个(其中孤立文件 {} 个) 耗时 {} ms",
+                deletedRows, droppedPartitions, deletedFiles, orphanFiles, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 所有规则都过期的整月分区 先分离再删除文件 最后删除分区表
+     * 中途停止时分区保持分离状态 下次继续删除
+     */
+    private void dropExpiredPartitions(Connection connection) throws SQLException, InterruptedException {
+        int maxDays = rules.maxDays();
+        if (maxDays <= 0) {
+            return;
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(maxDays);
+        for (Map.Entry<YearMonth, Boolean> entry : partitions.list(connection).entrySet()) {
+            YearMonth month = entry.getKey();
+            if (!running || month.plusMonths(1).atDay(1).isAfter(cutoff)) {
+                break;
+            }
+            if (entry.getValue()) {
+                partitions.detach(connection, month);
+                log.info("data_png_table分区已分离: {}", DataPngPartitions.partitionName(month));
+            }
+            String partition = configManager.getDbSchema() + "." + DataPngPartitions.partitionName(month);
+            if (!deleteFilesOf(connection, "SELECT png_path, json_path FROM " + partition)) {
+                return;
+            }
+            long rows = count(connection, partition);
+            partitions.drop(connection, month);
+            deletedRows += rows;
+            droppedPartitions++;
+            log.info("data_png_table分区已删除: {} 记录 {} 条", partition, rows);
+        }
+    }
+
+    /**
+     * 第 index 条规则匹配且前面的规则都不匹配的过期记录
+     */
+    private void deleteExpired(Connection connection, int index) throws SQLException, InterruptedException {
+        RetentionRules.Rule rule = rules.getRules().get(index);
+        if (rule.getDays() == 0) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("SELECT id, png_path, json_path FROM ").append(table)
+                .append(" WHERE (data_time < ? OR (data_time IS NULL AND create_time < ?)) AND ")
+                .append(rule.condition());
+        for (int i = 0; i < index; i++) {
+            sql.append(" AND NOT ").append(rules.getRules().get(i).condition());
+        }
+        sql.append(" LIMIT ?");
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - rule.getDays() * DAY_MILLIS);
+        long before = deletedRows;
+        List<Row> rows;
+        do {
+            rows = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql.toString())) {
+                int parameter = 1;
+                pstmt.setTimestamp(parameter++, cutoff);
+                pstmt.setTimestamp(parameter++, cutoff);
+                parameter = rule.bind(pstmt, parameter);
+                for (int i = 0; i < index; i++) {
+                    parameter = rules.getRules().get(i).bind(pstmt, parameter);
+                }
+                pstmt.setInt(parameter, batchSize * BATCHES_PER_QUERY);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new Row(rs.getLong(1), rs.getString(2), rs.getString(3), true));
+                    }
+                }
+            }
+            purge(connection, rows);
+        } while (running && rows.size() == batchSize * BATCHES_PER_QUERY);
+        if (deletedRows > before) {
+            log.info("保留规则 {} 删除过期记录 {} 条", rule, deletedRows - before);
+        }
+    }
+
+    /**
+     * 同一个nc文件多次转换生成的同一张图 只保留最后一次转换的记录
+     * 转换时间取雪花ID中的生成时间(本地记录延迟入库时也不变) 与同一张图最新的记录相差 RUN_GAP_MILLIS 以内的视为同一次转换
+     * 同一次转换中名称相同的切片(同一小时内的多个时次、没有时间的切片)都保留
+     * 其他记录仍在使用同一个图片文件时只删除记录
+     */
+    private void deleteDuplicates(Connection connection) throws SQLException, InterruptedException {
+        // 图片名为 <前缀>_<数字>.png 去掉末尾的数字后相同即为同一张图
+        String runTime = "(id >> " + SnowflakeIdGenerator.TIMESTAMP_SHIFT + ")";
+        String sql = "SELECT id, png_path, json_path, shared FROM (" +
+                "SELECT id, png_path, json_path, " + runTime + " AS run_time, " +
+                "MAX(" + runTime + ") OVER (PARTITION BY file_path, regexp_replace(png_path, '_[0-9]+\\.png$', '')) AS latest, " +
+                "COUNT(*) OVER (PARTITION BY file_path, png_path) > 1 AS shared FROM " + table +
+                " WHERE png_path IS NOT NULL" +
+                ") d WHERE run_time < latest - ? LIMIT ?";
+        long before = deletedRows;
+        List<Row> rows;
+        do {
+            rows = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setLong(1, RUN_GAP_MILLIS);
+                pstmt.setInt(2, batchSize * BATCHES_PER_QUERY);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new Row(rs.getLong(1), rs.getString(2), rs.getString(3), !rs.getBoolean(4)));
+                    }
+                }
+            }
+            purge(connection, rows);
+        } while (running && rows.size() == batchSize * BATCHES_PER_QUERY);
+        if (deletedRows > before) {
+            log.info("删除之前转换的重复记录 {} 条", deletedRows - before);
+        }
+    }
+
+    /**
+     * 按批删除文件和记录 先删文件再删记录 中途停止时剩下的记录下次再删
+     */
+    private void purge(Connection connection, List<Row> rows) throws SQLException, InterruptedException {
+        String sql = "DELETE FROM " + table + " WHERE id = ANY(?)";
+        for (int from = 0; from < rows.size() && running; from += batchSize) {
+            List<Row> batch = rows.subList(from, Math.min(rows.size(), from + batchSize));
+            Long[] ids = new Long[batch.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Row row = batch.get(i);
+                if (row.deleteFiles) {
+                    deleteFile(row.pngPath);
+                    deleteFile(row.jsonPath);
+                }
+                ids[i] = row.id;
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                Array array = connection.createArrayOf("bigint", ids);
+                pstmt.setArray(1, array);
+                deletedRows += pstmt.executeUpdate();
+                array.free();
+            }
+        }
+    }
+
+    /**
+     * 删除查询结果中的 png、json 文件 查询使用游标分批读取
+     *
+     * @return 是否全部删除(中途停止时返回false)
+     */
+    private boolean deleteFilesOf(Connection connection, String sql) throws SQLException, InterruptedException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.setFetchSize(batchSize);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    if (!running) {
+                        return false;
+                    }
+                    deleteFile(rs.getString(1));
+                    deleteFile(rs.getString(2));
+                }
+            }
+        } finally {
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+        }
+        return true;
+    }
+
+    private long count(Connection connection, String table) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * 删除输出目录中没有对应记录的 png、json 文件
+     * 记录的路径取64位哈希后排序 按二分查找判断 不在内存中保存路径字符串
+     * 以下文件不删除:
+     * 修改时间在宽限时间内的文件(可能刚生成、记录还没写入)
+     * 修改时间早于最早一条记录的文件(之前版本生成的输出)
+     * 对应的输入目录不存在 或目录、其中任意一个nc文件排除入库的输出
+     */
+    private void sweepOrphans(Connection connection) throws SQLException, InterruptedException {
+        Path outputRoot = Paths.get(configManager.getOutputDirectory()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(outputRoot)) {
+            return;
+        }
+        long[] known = loadPathHashes(connection);
+        if (known == null || catalogStart == Long.MAX_VALUE) {
+            return;
+        }
+        Path inputRoot = Paths.get(configManager.getInputDirectory()).toAbsolutePath().normalize();
+        long cutoff = System.currentTimeMillis() - orphanGraceMillis;
+        Map<Path, Boolean> keptDirs = new HashMap<>();
+        List<Path> orphans = new ArrayList<>();
+        try {
+            Files.walkFileTree(outputRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return running ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    long modified = attrs.lastModifiedTime().toMillis();
+                    if (attrs.isRegularFile() && (name.endsWith(".png") || name.endsWith(".json"))
+                            && modified < cutoff && modified >= catalogStart
+                            && Arrays.binarySearch(known, hash(file.toString())) < 0) {
+                        // 输出文件为 <输出根目录>/<nc所在的相对目录>/<要素>/<图片名>
+                        Path dir = file.getParent().getParent();
+                        if (dir != null && dir.startsWith(outputRoot)
+                                && !keptDirs.computeIfAbsent(dir, d -> isKept(inputRoot.resolve(outputRoot.relativize(d).toString())))) {
+                            orphans.add(file);
+                        }
+                    }
+                    return running ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    log.warn("读取文件失败 已跳过: {} {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.error("遍历输出目录失败: {}", e.getMessage());
+            return;
+        }
+        for (Path orphan : orphans) {
+            if (!running) {
+                break;
+            }
+            if (deleteFile(orphan.toString())) {
+                orphanFiles++;
+            }
+        }
+        if (!orphans.isEmpty()) {
+            log.info("删除孤立文件 {} 个", orphanFiles);
+        }
+    }
+
+    /**
+     * 输入目录的输出是否保留 目录不存在(无法判断排除规则)、目录或其中任意一个nc文件排除入库时保留
+     */
+    private boolean isKept(Path inputDir) {
+        if (!Files.isDirectory(inputDir) || configManager.isExcludedFromDatabase(inputDir.toString())) {
+            return true;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(inputDir)) {
+            for (Path entry : entries) {
+                if (entry.getFileName().toString().toLowerCase().endsWith(".nc")
+                        && configManager.isExcludedFromDatabase(entry.toString())) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("读取输入目录失败 对应的输出不删除: {} {}", inputDir, e.getMessage());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有记录中 png、json 路径的哈希 已排序 同时记录最早的入库时间 catalogStart
+     */
+    private long[] loadPathHashes(Connection connection) throws SQLException {
+        long[] hashes = new long[1024];
+        int size = 0;
+        catalogStart = Long.MAX_VALUE;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.setFetchSize(10000);
+            try (ResultSet rs = stmt.executeQuery("SELECT png_path, json_path, create_time FROM " + table)) {
+                while (rs.next()) {
+                    if (!running) {
+                        return null;
+                    }
+                    if (size + 2 > hashes.length) {
+                        hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                    }
+                    for (int column = 1; column <= 2; column++) {
+                        String path = rs.getString(column);
+                        if (path != null) {
+                            hashes[size++] = hash(Paths.get(path).toAbsolutePath().normalize().toString());
+                        }
+                    }
+                    Timestamp createTime = rs.getTimestamp(3);
+                    if (createTime != null) {
+                        catalogStart = Math.min(catalogStart, createTime.getTime());
+                    }
+                }
+            }
+        } finally {
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+        }
+        hashes = Arrays.copyOf(hashes, size);
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    /**
+     * 64位 FNV-1a
+     */
+    static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 删除文件 按每秒上限限速
+     *
+     * @return 文件是否存在并已删除
+     */
+    private boolean deleteFile(String path) throws InterruptedException {
+        if (path == null) {
+            return false;
+        }
+        if (nanosPerFile > 0) {
+            long wait = nextDeleteNanos - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            nextDeleteNanos = Math.max(nextDeleteNanos, System.nanoTime() - TimeUnit.SECONDS.toNanos(1)) + nanosPerFile;
+        }
+        try {
+            if (Files.deleteIfExists(Paths.get(path))) {
+                deletedFiles++;
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("删除文件失败: {} {}", path, e.getMessage());
+        }
+        return false;
+    }
+
+    private static final class Row {
+        private final long id;
+        private final String pngPath;
+        private final String jsonPath;
+        private final boolean deleteFiles;
+
+        private Row(long id, String pngPath, String jsonPath, boolean deleteFiles) {
+            this.id = id;
+            this.pngPath = pngPath;
+            this.jsonPath = jsonPath;
+            this.deleteFiles = deleteFiles;
+        }
+    }
+}
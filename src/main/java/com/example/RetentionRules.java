@@ -0,0 +1,248 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 保留策略表 按要素、按目录配置图片保留的天数
+ * 配置格式: 每行一条 条件=保留天数 例如
+ * folder:hourly*=30
+ * element:t2m,folder:daily=365
+ * *=730
+ * 条件 element:要素名 folder:输出目录下的第一级目录 可以用逗号组合 通配符 * 和 ? 不区分大小写 * 匹配所有记录
+ * 按文件中的顺序匹配 第一条匹配的规则生效 保留天数为0表示永久保留 没有规则匹配的记录不删除
+ */
+@Slf4j
+public class RetentionRules {
+
+    public static final RetentionRules EMPTY = new RetentionRules(Collections.<Rule>emptyList());
+
+    private final List<Rule> rules;
+
+    private RetentionRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * 从规则文件加载 文件不存在时返回空表
+     *
+     * @param filePath 规则文件路径
+     * @return
+     */
+    public static RetentionRules load(String filePath) {
+        if (StringUtils.isBlank(filePath)) {
+            return EMPTY;
+        }
+        File file = new File(filePath);
+        if (!file.exists()) {
+            log.info("保留策略表不存在:{} 不清理旧数据", file.getAbsolutePath());
+            return EMPTY;
+        }
+        List<Rule> rules = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                Rule rule = parseRule(line, lineNumber);
+                if (rule != null) {
+                    rules.add(rule);
+                }
+            }
+        } catch (IOException e) {
+            log.error("读取保留策略表失败:{}", e.getMessage());
+            return EMPTY;
+        }
+        log.info("保留策略表加载完成:{} 共{}条", file.getAbsolutePath(), rules.size());
+        return new RetentionRules(Collections.unmodifiableList(rules));
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * 所有记录都会过期时的最长保留天数 用于整月删除分区
+     *
+     * @return 有永久保留的规则或没有匹配所有记录的规则时返回 0
+     */
+    public int maxDays() {
+        int max = 0;
+        boolean catchAll = false;
+        for (Rule rule : rules) {
+            if (rule.days == 0) {
+                return 0;
+            }
+            max = Math.max(max, rule.days);
+            if (rule.matchesAll()) {
+                catchAll = true;
+                break;
+            }
+        }
+        return catchAll ? max : 0;
+    }
+
+    private static Rule parseRule(String line, int lineNumber) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        int separator = trimmed.lastIndexOf('=');
+        if (separator <= 0 || separator == trimmed.length() - 1) {
+            log.warn("保留策略格式不正确 已忽略 第{}行:{}", lineNumber, line);
+            return null;
+        }
+        int days;
+        try {
+            days = Integer.parseInt(trimmed.substring(separator + 1).trim());
+        } catch (NumberFormatException e) {
+            days = -1;
+        }
+        if (days < 0) {
+            log.warn("保留天数不正确 已忽略 第{}行:{}", lineNumber, line);
+            return null;
+        }
+        String condition = trimmed.substring(0, separator).trim();
+        if ("*".equals(condition)) {
+            return new Rule(null, null, days);
+        }
+        String element = null;
+        String folder = null;
+        for (String part : condition.split(",")) {
+            String item = part.trim();
+            if (StringUtils.startsWithIgnoreCase(item, "element:") && item.length() > 8) {
+                element = item.substring(8).trim().toLowerCase();
+            } else if (StringUtils.startsWithIgnoreCase(item, "folder:") && item.length() > 7) {
+                folder = item.substring(7).trim();
+            } else {
+                log.warn("保留策略条件不正确 已忽略 第{}行:{}", lineNumber, line);
+                return null;
+            }
+        }
+        return new Rule(element, folder, days);
+    }
+
+    /**
+     * 通配符转为 LIKE 模式 转义符为 \
+     */
+    static String toLike(String glob) {
+        StringBuilder like = new StringBuilder(glob.length() + 4);
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    like.append('%');
+                    break;
+                case '?':
+                    like.append('_');
+                    break;
+                case '%':
+                case '_':
+                case '\\':
+                    like.append('\\').append(c);
+                    break;
+                default:
+                    like.append(c);
+            }
+        }
+        return like.toString();
+    }
+
+    /**
+     * 一条保留规则 element、folder 为 null 表示不限
+     */
+    public static final class Rule {
+        private final String element;
+        private final String folder;
+        private final int days;
+
+        private Rule(String element, String folder, int days) {
+            this.element = element;
+            this.folder = folder;
+            this.days = days;
+        }
+
+        public String getElement() {
+            return element;
+        }
+
+        public String getFolder() {
+            return folder;
+        }
+
+        public int getDays() {
+            return days;
+        }
+
+        public boolean matchesAll() {
+            return element == null && folder == null;
+        }
+
+        /**
+         * 规则条件的SQL 参数依次为要素、目录的 LIKE 模式
+         */
+        String condition() {
+            if (matchesAll()) {
+                return "TRUE";
+            }
+            StringBuilder sql = new StringBuilder("COALESCE(");
+            if (element != null) {
+                sql.append("LOWER(ele_name) LIKE ? ESCAPE '\\'");
+            }
+            if (folder != null) {
+                if (element != null) {
+                    sql.append(" AND ");
+                }
+                sql.append("LOWER(png_relative_path) LIKE LOWER(?) ESCAPE '\\'");
+            }
+            return sql.append(", FALSE)").toString();
+        }
+
+        /**
+         * 绑定规则条件的参数
+         *
+         * @return 下一个参数的位置
+         */
+        int bind(PreparedStatement pstmt, int index) throws SQLException {
+            if (element != null) {
+                pstmt.setString(index++, toLike(element));
+            }
+            if (folder != null) {
+                // png_relative_path 为 /NC/<目录>/...
+                pstmt.setString(index++, "/NC/" + toLike(folder) + "/%");
+            }
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            if (matchesAll()) {
+                return "*=" + days;
+            }
+            StringBuilder text = new StringBuilder();
+            if (element != null) {
+                text.append("element:").append(element);
+            }
+            if (folder != null) {
+                text.append(text.length() > 0 ? "," : "").append("folder:").append(folder);
+            }
+            return text.append('=').append(days).toString();
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.example;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * 雪花ID生成器
  * 基于Twitter的Snowflake算法实现分布式唯一ID生成
+ * 时间戳和序列号合成一个long 用CAS更新 不加锁
+ * 同一毫秒内序列号用完时借用下一毫秒(不等待) 最多领先系统时间 MAX_AHEAD_MILLIS 超过时等待
  */
 public class SnowflakeIdGenerator {
     
@@ -34,12 +38,21 @@ public class SnowflakeIdGenerator {
     private static final long DATACENTER_ID_SHIFT = SEQUENCE_BITS + MACHINE_ID_BITS;
     
     // 时间戳左移位数
-    private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS + MACHINE_ID_BITS + DATACENTER_ID_BITS;
+    static final long TIMESTAMP_SHIFT = SEQUENCE_BITS + MACHINE_ID_BITS + DATACENTER_ID_BITS;
+    
+    // 序列号用完时最多领先系统时间的毫秒数
+    private static final long MAX_AHEAD_MILLIS = 1000L;
+    
+    // 一次最多预留的ID个数
+    public static final int MAX_BLOCK = (int) MAX_SEQUENCE + 1;
     
     private final long machineId;
     private final long datacenterId;
-    private long sequence = 0L;
-    private long lastTimestamp = -1L;
+    
+    /**
+     * 上次生成的 (时间戳 - START_TIMESTAMP) << SEQUENCE_BITS | 序列号
+     */
+    private final AtomicLong state = new AtomicLong(-1L);
     
     /**
      * 构造函数
@@ -64,50 +77,93 @@ public class SnowflakeIdGenerator {
         this(1L, 1L);
     }
     
+    /**
+     * 使用配置中的机器ID和数据中心ID 多个实例写同一个库时需要配置不同的值
+     */
+    public SnowflakeIdGenerator(ConfigManager configManager) {
+        this(configManager.getSnowflakeMachineId(), configManager.getSnowflakeDatacenterId());
+    }
+    
     /**
      * 生成下一个ID
      * @return 唯一ID
      */
-    public synchronized long nextId() {
-        long timestamp = getCurrentTimestamp();
-        
-        // 时间回拨检查
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException("时间回拨异常，拒绝生成ID");
+    public long nextId() {
+        return toId(reserve(1));
+    }
+    
+    /**
+     * 一次预留 n 个ID 用于批量插入
+     * @param n 个数 (1-4096)
+     * @return 递增的 n 个唯一ID
+     */
+    public long[] nextIds(int n) {
+        if (n < 1 || n > MAX_BLOCK) {
+            throw new IllegalArgumentException("一次预留的ID个数必须在1到" + MAX_BLOCK + "之间");
         }
-        
-        // 同一毫秒内序列号递增
-        if (timestamp == lastTimestamp) {
-            sequence = (sequence + 1) & MAX_SEQUENCE;
-            // 序列号溢出，等待下一毫秒
-            if (sequence == 0) {
-                timestamp = waitNextMillis(lastTimestamp);
-            }
-        } else {
-            // 不同毫秒，序列号重置
-            sequence = 0L;
+        long last = reserve(n);
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = toId(last - (n - 1 - i));
         }
-        
-        lastTimestamp = timestamp;
-        
-        // 组装ID
-        return ((timestamp - START_TIMESTAMP) << TIMESTAMP_SHIFT)
-                | (datacenterId << DATACENTER_ID_SHIFT)
-                | (machineId << MACHINE_ID_SHIFT)
-                | sequence;
+        return ids;
     }
     
     /**
-     * 等待下一毫秒
-     * @param lastTimestamp 上次时间戳
-     * @return 新的时间戳
+     * ID中的时间戳(毫秒)
      */
-    private long waitNextMillis(long lastTimestamp) {
-        long timestamp = getCurrentTimestamp();
-        while (timestamp <= lastTimestamp) {
-            timestamp = getCurrentTimestamp();
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + START_TIMESTAMP;
+    }
+    
+    public long getMachineId() {
+        return machineId;
+    }
+    
+    public long getDatacenterId() {
+        return datacenterId;
+    }
+    
+    /**
+     * 预留 n 个连续的 时间戳|序列号
+     * 当前毫秒大于上次的时间戳时从当前毫秒的0号开始 否则接着上次往后数 序列号进位到下一毫秒
+     * @return 预留的最后一个值
+     */
+    private long reserve(int n) {
+        while (true) {
+            long current = state.get();
+            long now = getCurrentTimestamp() - START_TIMESTAMP;
+            long lastMillis = current >>> SEQUENCE_BITS;
+            long first;
+            if (current < 0 || now > lastMillis) {
+                first = now << SEQUENCE_BITS;
+            } else {
+                // 时间回拨检查 借用不会超过 MAX_AHEAD_MILLIS 超过只能是系统时间回拨
+                if (lastMillis - now > MAX_AHEAD_MILLIS) {
+                    throw new RuntimeException("时间回拨异常，拒绝生成ID");
+                }
+                first = current + 1;
+                // 借用太多 让出CPU等系统时间追上
+                if (((first + n - 1) >>> SEQUENCE_BITS) - now > MAX_AHEAD_MILLIS) {
+                    Thread.yield();
+                    continue;
+                }
+            }
+            long last = first + n - 1;
+            if (state.compareAndSet(current, last)) {
+                return last;
+            }
         }
-        return timestamp;
+    }
+    
+    /**
+     * 组装ID
+     */
+    private long toId(long packed) {
+        return ((packed >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                | (datacenterId << DATACENTER_ID_SHIFT)
+                | (machineId << MACHINE_ID_SHIFT)
+                | (packed & MAX_SEQUENCE);
     }
     
     /**
@@ -117,4 +173,4 @@ public class SnowflakeIdGenerator {
     private long getCurrentTimestamp() {
         return System.currentTimeMillis();
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,7 @@
 package com.geovis.tools.json;
 
+import lombok.extern.slf4j.Slf4j;
+
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -16,6 +18,7 @@ import java.nio.charset.StandardCharsets;
  * @Date: 2022/11/12 14:06
  * @Version: 1.0
  */
+@Slf4j
 public class JsonUtils {
     /**
      * 写json 到文件
@@ -81,11 +84,10 @@ public class JsonUtils {
             // 写入文件内容（会自动创建文件）
             //Files.writeString(path, content);
             Files.write(path, content.getBytes(StandardCharsets.UTF_8));
-            System.out.println("文件写入成功: " + filePath);
+            log.debug("文件写入成功: {}", filePath);
             
         } catch (IOException e) {
-            System.err.println("文件操作失败: " + e.getMessage());
-            e.printStackTrace();
+            log.error("文件操作失败: {}", e.getMessage(), e);
         }
     }
 
@@ -106,7 +108,7 @@ public class JsonUtils {
                 jsonStr.append(line);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("读取json文件失败: {}", jsonFile.getAbsolutePath(), e);
         }
         return jsonStr.toString();
     }
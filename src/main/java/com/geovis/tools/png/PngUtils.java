@@ -32,39 +32,37 @@ public class PngUtils {
      * bufferedImage 左上角为(0,0)
      *
      * @param pngName png名字
-     * @param data    二维数组 从左下角开始写
+     * @param data    二维数组 从左下角开始写 无效值见 NumberUtils.isInvalidMarker
      * @param width
      * @param height
      */
     public static void writeDataToPngFromLeftBottom(String pngName, double[][] data, int width, int height) {
+        double[] range = peekValue(data);
+        writeDataToPngFromLeftBottom(pngName, data, width, height, range[0], range[1]);
+    }
+
+    /**
+     * 按照已知的色标范围写png 从左下角开始渲染
+     * 范围已知时(属性值域或固定值域) 不再统计最大最小值
+     *
+     * @param pngName png名字
+     * @param data    二维数组 从左下角开始写 无效值见 NumberUtils.isInvalidMarker
+     * @param width
+     * @param height
+     * @param min     色标最小值
+     * @param max     色标最大值
+     */
+    public static void writeDataToPngFromLeftBottom(String pngName, double[][] data, int width, int height, double min, double max) {
 
         BufferedImage bufImg = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
         Graphics2D g2d = bufImg.createGraphics();
         java.awt.geom.Rectangle2D.Double r = new java.awt.geom.Rectangle2D.Double(0, 0, width, height);
         g2d.fill(r);
-        double min = 999999;
-        double max = -999999;
-        for (int i = 0, count = data.length; i < count; i++) {
-            for (int j = 0; j < data[i].length; j++) {
-                if (data[i][j] == -999 || data[i][j] == 999999 || data[i][j] == -9999 || data[i][j] > 999999 || data[i][j] == 9999 || data[i][j] == NumberUtils.inputInvalidValue) {
-                    continue;
-                }
-                if (min > data[i][j]) {
-                    min = data[i][j];
-                }
-                if (max < data[i][j]) {
-                    max = data[i][j];
-                }
-            }
-        }
-        max = Double.parseDouble(NumberUtils.scienceD(max));
-        min = Double.parseDouble(NumberUtils.scienceD(min));
         // 透明度
         int a = 255;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (data[j][i] == 999999 || data[j][i] == -999 || data[j][i] == -9999.0 || data[j][i] >= 999999 || Double.isNaN(data[j][i]) ||
-                        data[j][i] == NumberUtils.inputInvalidValue) {
+                if (NumberUtils.isInvalidMarker(data[j][i])) {
                     // 无效值 透明度为0
                     a = 0;
                 } else {
@@ -106,39 +104,36 @@ public class PngUtils {
      * bufferedImage 左上角为(0,0)
      *
      * @param pngName png名字
-     * @param data    二维数组 从左上角开始写
+     * @param data    二维数组 从左上角开始写 无效值见 NumberUtils.isInvalidMarker
      * @param width
      * @param height
      */
     public static void writeDataToPngFromLeftTop(String pngName, double[][] data, int width, int height) {
+        double[] range = peekValue(data);
+        writeDataToPngFromLeftTop(pngName, data, width, height, range[0], range[1]);
+    }
+
+    /**
+     * 按照已知的色标范围写png 从左上角开始渲染
+     *
+     * @param pngName png名字
+     * @param data    二维数组 从左上角开始写 无效值见 NumberUtils.isInvalidMarker
+     * @param width
+     * @param height
+     * @param min     色标最小值
+     * @param max     色标最大值
+     */
+    public static void writeDataToPngFromLeftTop(String pngName, double[][] data, int width, int height, double min, double max) {
 
         BufferedImage bufImg = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
         Graphics2D g2d = bufImg.createGraphics();
         java.awt.geom.Rectangle2D.Double r = new java.awt.geom.Rectangle2D.Double(0, 0, width, height);
         g2d.fill(r);
-        double min = 999999;
-        double max = -999999;
-        for (int i = 0, count = data.length; i < count; i++) {
-            for (int j = 0; j < data[i].length; j++) {
-                if (data[i][j] == -999 || data[i][j] == 999999 || data[i][j] == -9999 || data[i][j] > 999999 || data[i][j] == 9999 || data[i][j] == NumberUtils.inputInvalidValue) {
-                    continue;
-                }
-                if (min > data[i][j]) {
-                    min = data[i][j];
-                }
-                if (max < data[i][j]) {
-                    max = data[i][j];
-                }
-            }
-        }
-        max = Double.parseDouble(NumberUtils.scienceD(max));
-        min = Double.parseDouble(NumberUtils.scienceD(min));
         // 透明度
         int a = 255;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (data[j][i] == 999999 || data[j][i] == -999 || data[j][i] == -9999.0 || data[j][i] >= 999999 || Double.isNaN(data[j][i]) ||
-                        data[j][i] == NumberUtils.inputInvalidValue) {
+                if (NumberUtils.isInvalidMarker(data[j][i])) {
                     // 无效值 透明度为0
                     a = 0;
                 } else {
@@ -193,10 +188,7 @@ public class PngUtils {
         double min = 999999;
         double max = -999999;
         for (int i = 0, count = data.length; i < count; i++) {
-            if (data[i] == 999999) {
-                continue;
-            }
-            if (data[i] == -999 || data[i] == 999999 || data[i] == -9999 || data[i] > 999999 || data[i] == 9999) {
+            if (NumberUtils.isInvalidMarker(data[i])) {
                 continue;
             }
             if (min > data[i]) {
@@ -212,8 +204,7 @@ public class PngUtils {
         int a = 255;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (data[j * width + i] == 999999 || data[j * width + i] == -999 || data[j * width + i] == -9999.0 || data[j * width + i] >= 999999 || Double.isNaN(data[j * width + i]) ||
-                        data[j * width + i] == NumberUtils.inputInvalidValue) {
+                if (NumberUtils.isInvalidMarker(data[j * width + i])) {
                     // 有效值 透明度为0
                     a = 0;
                 } else {
@@ -268,10 +259,7 @@ public class PngUtils {
         double min = 999999;
         double max = -999999;
         for (int i = 0, count = data.length; i < count; i++) {
-            if (data[i] == 999999) {
-                continue;
-            }
-            if (data[i] == -999 || data[i] == 999999 || data[i] == -9999 || data[i] > 999999 || data[i] == 9999) {
+            if (NumberUtils.isInvalidMarker(data[i])) {
                 continue;
             }
             if (min > data[i]) {
@@ -287,8 +275,7 @@ public class PngUtils {
         int a = 255;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (data[j * width + i] == 999999 || data[j * width + i] == -999 || data[j * width + i] == -9999.0 || data[j * width + i] >= 999999 || Double.isNaN(data[j * width + i]) ||
-                        data[j * width + i] == NumberUtils.inputInvalidValue) {
+                if (NumberUtils.isInvalidMarker(data[j * width + i])) {
                     // 有效值 透明度为0
                     a = 0;
                 } else {
@@ -346,11 +333,7 @@ public class PngUtils {
         double minV = 999999;
         double maxV = -999999;
         for (int i = 0, count = uData.length; i < count; i++) {
-            if (uData[i] == 999999) {
-                continue;
-            }
-            if (uData[i] == -999 || uData[i] == 999999 || uData[i] == -9999 || uData[i] > 999999 || uData[i] == 9999
-                    || vData[i] == -999 || vData[i] == 999999 || vData[i] == -9999 || vData[i] > 999999 || vData[i] == 9999) {
+            if (NumberUtils.isInvalidMarker(uData[i]) || NumberUtils.isInvalidMarker(vData[i])) {
                 continue;
             }
             if (minU > uData[i]) {
@@ -374,10 +357,7 @@ public class PngUtils {
         int a = 255;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (uData[j * width + i] == 999999 || uData[j * width + i] == -999 || uData[j * width + i] == -9999.0 || uData[j * width + i] >= 999999 || Double.isNaN(uData[j * width + i]) ||
-                        uData[j * width + i] == NumberUtils.inputInvalidValue ||
-                        vData[j * width + i] == 999999 || vData[j * width + i] == -999 || vData[j * width + i] == -9999.0 || vData[j * width + i] >= 999999 || Double.isNaN(vData[j * width + i]) ||
-                        vData[j * width + i] == NumberUtils.inputInvalidValue) {
+                if (NumberUtils.isInvalidMarker(uData[j * width + i]) || NumberUtils.isInvalidMarker(vData[j * width + i])) {
                     // 有效值 透明度为0
                     a = 0;
                 } else {
@@ -437,11 +417,7 @@ public class PngUtils {
         double maxV = -999999;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (uData[j][i] == 999999) {
-                    continue;
-                }
-                if (uData[j][i] == -999 || uData[j][i] == 999999 || uData[j][i] == -9999 || uData[j][i] > 999999 || uData[j][i] == 9999
-                        || vData[j][i] == -999 || vData[j][i] == 999999 || vData[j][i] == -9999 || vData[j][i] > 999999 || vData[j][i] == 9999) {
+                if (NumberUtils.isInvalidMarker(uData[j][i]) || NumberUtils.isInvalidMarker(vData[j][i])) {
                     continue;
                 }
                 if (minU > uData[j][i]) {
@@ -466,10 +442,7 @@ public class PngUtils {
         int a = 255;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (uData[j][i] == 999999 || uData[j][i] == -999 || uData[j][i] == -9999.0 || uData[j][i] >= 999999 || Double.isNaN(uData[j][i]) ||
-                        uData[j][i] == NumberUtils.inputInvalidValue ||
-                        vData[j][i] == 999999 || vData[j][i] == -999 || vData[j][i] == -9999.0 || vData[j][i] >= 999999 || Double.isNaN(vData[j][i]) ||
-                        vData[j][i] == NumberUtils.inputInvalidValue) {
+                if (NumberUtils.isInvalidMarker(uData[j][i]) || NumberUtils.isInvalidMarker(vData[j][i])) {
                     // 有效值 透明度为0
                     a = 0;
                 } else {
@@ -528,11 +501,7 @@ public class PngUtils {
         double minV = 999999;
         double maxV = -999999;
         for (int i = 0, count = uData.length; i < count; i++) {
-            if (uData[i] == 999999) {
-                continue;
-            }
-            if (uData[i] == -999 || uData[i] == 999999 || uData[i] == -9999 || uData[i] > 999999 || uData[i] == 9999
-                    || vData[i] == -999 || vData[i] == 999999 || vData[i] == -9999 || vData[i] > 999999 || vData[i] == 9999) {
+            if (NumberUtils.isInvalidMarker(uData[i]) || NumberUtils.isInvalidMarker(vData[i])) {
                 continue;
             }
             if (minU > uData[i]) {
@@ -556,10 +525,7 @@ public class PngUtils {
         int a = 255;
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                if (uData[j * width + i] == 999999 || uData[j * width + i] == -999 || uData[j * width + i] == -9999.0 || uData[j * width + i] >= 999999 || Double.isNaN(uData[j * width + i]) ||
-                        uData[j * width + i] == NumberUtils.inputInvalidValue ||
-                        vData[j * width + i] == 999999 || vData[j * width + i] == -999 || vData[j * width + i] == -9999.0 || vData[j * width + i] >= 999999 || Double.isNaN(vData[j * width + i]) ||
-                        vData[j * width + i] == NumberUtils.inputInvalidValue) {
+                if (NumberUtils.isInvalidMarker(uData[j * width + i]) || NumberUtils.isInvalidMarker(vData[j * width + i])) {
                     // 有效值 透明度为0
                     a = 0;
                 } else {
@@ -588,6 +554,104 @@ public class PngUtils {
         }
     }
 
+    /**
+     * 按步长写png 所有渲染方向共用
+     * 图片 (x, y) 处的像素取 data[origin + y * rowStride + x * colStride]
+     * 左下、左上、右下、右上以及经度在前的存储顺序 都只是 origin 和步长不同 不需要复制或转置数组
+     *
+     * @param pngName   png名字
+     * @param data      一维数组 无效值为 NaN(见 NumberUtils.maskInvalid)
+     * @param origin    图片左上角对应的数据下标
+     * @param rowStride 图片向下一行 数据下标的增量 可以为负
+     * @param colStride 图片向右一列 数据下标的增量 可以为负
+     * @param width
+     * @param height
+     * @param min       色标最小值
+     * @param max       色标最大值
+     */
+    public static void writeDataToPng(String pngName, double[] data, int origin, int rowStride, int colStride, int width, int height, double min, double max) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int index = origin + y * rowStride;
+            for (int x = 0; x < width; x++, index += colStride) {
+                double value = data[index];
+                if (Double.isNaN(value)) {
+                    // 无效值 透明度为0
+                    continue;
+                }
+                // 透明度|red|green|blue
+                argb[y * width + x] = (255 << 24) | (quantize(value, min, max) << 16);
+            }
+        }
+        writeArgbToPng(pngName, argb, width, height);
+    }
+
+    /**
+     * 直接将像素写入png 像素已完成量化
+     *
+     * @param pngName png名字
+     * @param argb    像素 ARGB 行优先 从左上角开始
+     * @param width
+     * @param height
+     */
+    public static void writeArgbToPng(String pngName, int[] argb, int width, int height) {
+        BufferedImage bufImg = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        bufImg.setRGB(0, 0, width, height, argb, 0, width);
+        File file = new File(pngName.replace(".nc", ""));
+        if (!file.getParentFile().getAbsoluteFile().exists()) {
+            log.info("创建父目录:{}", file.getParentFile().getAbsoluteFile().mkdirs());
+        }
+        try {
+            file.createNewFile();
+            ImageIO.write(bufImg, "png", file);
+        } catch (IOException e) {
+            log.error("文件写入失败，路径为:{}===>{}", pngName, e);
+        }
+    }
+
+    /**
+     * 按色标范围量化为 0-255 超出范围的值取边界
+     *
+     * @param value 有效值
+     * @param min   最小
+     * @param max   最大
+     * @return
+     */
+    public static int quantize(double value, double min, double max) {
+        int level = (int) (Math.abs((value - min) / (max - min)) * 255);
+        if (value <= min) {
+            return 0;
+        }
+        return Math.min(level, 255);
+    }
+
+    /**
+     * 统计二维数组的最大最小值 跳过无效值(见 NumberUtils.isInvalidMarker)
+     *
+     * @param data 二维数组
+     * @return [min, max]
+     */
+    private static double[] peekValue(double[][] data) {
+        double min = 999999;
+        double max = -999999;
+        for (int i = 0, count = data.length; i < count; i++) {
+            for (int j = 0; j < data[i].length; j++) {
+                if (NumberUtils.isInvalidMarker(data[i][j])) {
+                    continue;
+                }
+                if (min > data[i][j]) {
+                    min = data[i][j];
+                }
+                if (max < data[i][j]) {
+                    max = data[i][j];
+                }
+            }
+        }
+        max = Double.parseDouble(NumberUtils.scienceD(max));
+        min = Double.parseDouble(NumberUtils.scienceD(min));
+        return new double[]{min, max};
+    }
+
     /**
      * 根据最大最小和 当前值 获取r的值 就是按照比例划分
      *
@@ -597,7 +661,7 @@ public class PngUtils {
      * @return
      */
     private static int getRgbaValue(double min, double max, double value) {
-        if (value == 999999 || Double.isNaN(value) || value == -999 || value == -9999 || value > 999999 || Double.isNaN(value) || value == NumberUtils.inputInvalidValue) {
+        if (Double.isNaN(value)) {
             return 0;
         }
         return (int) (Math.abs((value - min) / (max - min)) * 255);